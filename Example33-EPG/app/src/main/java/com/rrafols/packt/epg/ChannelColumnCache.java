@@ -0,0 +1,166 @@
+package com.rrafols.packt.epg;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import java.util.ArrayList;
+
+/**
+ * Cache of the rendered channel column. The column is split in strips of a fixed number of
+ * rows, rendered once per channel width mode and composited with a vertical offset, so
+ * logos and channel names are not drawn again on every frame while scrolling horizontally.
+ * Strips with logos still loading are rendered again once the logos arrive.
+ */
+class ChannelColumnCache {
+    static final int CHANNELS_PER_TILE = 4;
+
+    interface Renderer {
+        /**
+         * Render the channel information of a row with its top at channelTop.
+         *
+         * @return false if something is still missing, for instance the channel logo
+         */
+        boolean renderRow(Canvas canvas, int row, float channelTop);
+    }
+
+    private static class Tile {
+        private int index;
+        private int mode;
+        private boolean valid;
+        private boolean complete;
+        private long lastUsed;
+        private Bitmap bitmap;
+    }
+
+    private final ArrayList<Tile> tiles;
+    private final Canvas tileCanvas;
+    private final float channelHeight;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int maxTiles;
+    private final int backgroundColor;
+    private long frame;
+
+    /**
+     * @param maxWidth width of the widest channel column mode
+     */
+    ChannelColumnCache(int maxBytes, float channelHeight, int maxWidth, int backgroundColor) {
+        this.channelHeight = channelHeight;
+        this.backgroundColor = backgroundColor;
+
+        tileWidth = Math.max(1, maxWidth);
+        tileHeight = (int) Math.ceil(channelHeight * CHANNELS_PER_TILE);
+        maxTiles = maxBytes / (tileWidth * tileHeight * 4);
+        tiles = new ArrayList<>(maxTiles);
+        tileCanvas = new Canvas();
+    }
+
+    /**
+     * Draw the strips visible on the channel column. scrollY is the column position shown at
+     * the top screen position. Strips are as wide as the widest mode, the caller has to clip
+     * them to the current column width.
+     *
+     * @return number of strips drawn or -1 if the visible strips do not fit in the cache and
+     * nothing has been drawn
+     */
+    int draw(Canvas canvas, Renderer renderer, int mode, float scrollY, float top,
+             int height, int rowCount) {
+
+        if (rowCount == 0) return 0;
+
+        float stripHeight = channelHeight * CHANNELS_PER_TILE;
+        int first = (int) (scrollY / stripHeight);
+        int last = Math.min((int) ((scrollY + height - top) / stripHeight),
+                (rowCount - 1) / CHANNELS_PER_TILE);
+
+        int visibleTiles = last - first + 1;
+        if (visibleTiles > maxTiles) return -1;
+
+        frame++;
+        for (int i = first; i <= last; i++) {
+            Tile tile = obtainTile(renderer, i, mode, rowCount);
+            canvas.drawBitmap(tile.bitmap, 0, Math.round(top + i * stripHeight - scrollY), null);
+        }
+
+        return visibleTiles;
+    }
+
+    /**
+     * Render again, when next drawn, the strips with missing information.
+     */
+    void invalidateIncomplete() {
+        for (int i = 0; i < tiles.size(); i++) {
+            Tile tile = tiles.get(i);
+            if (!tile.complete) tile.valid = false;
+        }
+    }
+
+    /**
+     * Render again all strips when next drawn, for instance if the channels shown changed.
+     */
+    void invalidate() {
+        for (int i = 0; i < tiles.size(); i++) {
+            tiles.get(i).valid = false;
+        }
+    }
+
+    /**
+     * Discard all strips and release their bitmaps.
+     */
+    void clear() {
+        for (int i = 0; i < tiles.size(); i++) {
+            tiles.get(i).bitmap.recycle();
+        }
+        tiles.clear();
+    }
+
+    private Tile obtainTile(Renderer renderer, int index, int mode, int rowCount) {
+        Tile tile = null;
+        Tile leastRecentlyUsed = null;
+        for (int i = 0; i < tiles.size(); i++) {
+            Tile t = tiles.get(i);
+            if (t.index == index && t.mode == mode) {
+                tile = t;
+                break;
+            }
+
+            if (t.lastUsed != frame && (leastRecentlyUsed == null || t.lastUsed < leastRecentlyUsed.lastUsed)) {
+                leastRecentlyUsed = t;
+            }
+        }
+
+        if (tile == null) {
+            if (tiles.size() < maxTiles) {
+                tile = new Tile();
+                tile.bitmap = Bitmap.createBitmap(tileWidth, tileHeight, Bitmap.Config.ARGB_8888);
+                tiles.add(tile);
+            } else {
+                // reuse the bitmap of the least recently used strip
+                tile = leastRecentlyUsed;
+            }
+
+            tile.index = index;
+            tile.mode = mode;
+            tile.valid = false;
+        }
+
+        if (!tile.valid) {
+            int firstRow = index * CHANNELS_PER_TILE;
+            int lastRow = Math.min(firstRow + CHANNELS_PER_TILE, rowCount) - 1;
+
+            tileCanvas.setBitmap(tile.bitmap);
+            tileCanvas.drawColor(backgroundColor);
+            boolean complete = true;
+            for (int row = firstRow; row <= lastRow; row++) {
+                complete &= renderer.renderRow(tileCanvas, row, (row - firstRow) * channelHeight);
+            }
+            tileCanvas.setBitmap(null);
+
+            tile.complete = complete;
+            tile.valid = true;
+        }
+
+        tile.lastUsed = frame;
+        return tile;
+    }
+}
@@ -0,0 +1,170 @@
+package com.rrafols.packt.epg;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import com.rrafols.packt.epg.data.Channel;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Loads channel icons for the visible channels. There is at most one request in flight per
+ * url, icons of the next page of channels in the scroll direction are prefetched and
+ * requests for channels scrolled far away are cancelled.
+ */
+class ChannelIconLoader implements IconFetcher.Callback {
+    private static final int CANCEL_DISTANCE_PAGES = 2;
+    static final long RETRY_DELAY = 30 * 1000;
+
+    interface Listener {
+        void onIconLoaded();
+    }
+
+    private static class Request {
+        private int firstChannel = Integer.MAX_VALUE;
+        private int lastChannel = -1;
+    }
+
+    private final Listener listener;
+    private final ChannelLogoCache logoCache;
+    private final HashMap<String, Request> requests;
+    private final HashMap<String, Long> failures;
+    private IconFetcher fetcher;
+    private Channel[] channels;
+    private int lastFirstVisible;
+    private int lastLastVisible;
+    private int lastEvictionCount;
+    private long nextRetryTime;
+
+    ChannelIconLoader(IconFetcher fetcher, ChannelLogoCache logoCache, Listener listener) {
+        this.fetcher = fetcher;
+        this.logoCache = logoCache;
+        this.listener = listener;
+
+        requests = new HashMap<>();
+        failures = new HashMap<>();
+        lastFirstVisible = -1;
+        lastLastVisible = -1;
+        nextRetryTime = Long.MAX_VALUE;
+    }
+
+    void setChannels(Channel[] channels) {
+        cancelAll();
+        this.channels = channels;
+    }
+
+    void setFetcher(IconFetcher fetcher) {
+        cancelAll();
+        failures.clear();
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * Request the icons of the visible channels, prefetch the next page in the scroll
+     * direction and cancel requests far away from the visible range. Only does any work when
+     * the visible range changes, logos have been evicted from the cache or a failed icon is
+     * due for a retry.
+     *
+     * @param direction positive when scrolling down, negative when scrolling up
+     */
+    void update(int firstVisible, int lastVisible, int direction) {
+        if (channels == null) return;
+        if (firstVisible == lastFirstVisible && lastVisible == lastLastVisible
+                && logoCache.getEvictionCount() == lastEvictionCount
+                && SystemClock.elapsedRealtime() < nextRetryTime) {
+            return;
+        }
+
+        lastFirstVisible = firstVisible;
+        lastLastVisible = lastVisible;
+        lastEvictionCount = logoCache.getEvictionCount();
+        nextRetryTime = Long.MAX_VALUE;
+
+        for (int i = firstVisible; i <= lastVisible; i++) {
+            request(i);
+        }
+
+        int page = lastVisible - firstVisible + 1;
+        if (direction > 0) {
+            for (int i = lastVisible + 1; i <= lastVisible + page; i++) request(i);
+        } else if (direction < 0) {
+            for (int i = firstVisible - 1; i >= firstVisible - page; i--) request(i);
+        }
+
+        int firstToKeep = firstVisible - page * CANCEL_DISTANCE_PAGES;
+        int lastToKeep = lastVisible + page * CANCEL_DISTANCE_PAGES;
+        Iterator<HashMap.Entry<String, Request>> iterator = requests.entrySet().iterator();
+        while (iterator.hasNext()) {
+            HashMap.Entry<String, Request> entry = iterator.next();
+            Request request = entry.getValue();
+            if (request.lastChannel < firstToKeep || request.firstChannel > lastToKeep) {
+                fetcher.cancel(entry.getKey());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Cancel all pending requests.
+     */
+    void cancelAll() {
+        for (String url : requests.keySet()) {
+            fetcher.cancel(url);
+        }
+        requests.clear();
+        lastFirstVisible = -1;
+        lastLastVisible = -1;
+    }
+
+    int getPendingRequestCount() {
+        return requests.size();
+    }
+
+    @Override
+    public void onIconLoaded(String url, Bitmap bitmap) {
+        if (requests.remove(url) == null) return;
+
+        logoCache.put(url, bitmap);
+        listener.onIconLoaded();
+    }
+
+    @Override
+    public void onIconFailed(String url) {
+        if (requests.remove(url) != null) {
+            long now = SystemClock.elapsedRealtime();
+            failures.put(url, now);
+            nextRetryTime = Math.min(nextRetryTime, now + RETRY_DELAY);
+        }
+    }
+
+    private void request(int channelIndex) {
+        if (channelIndex < 0 || channelIndex >= channels.length) return;
+
+        Channel channel = channels[channelIndex];
+        String url = channel.getIconUrl();
+        if (url == null || logoCache.contains(url)) return;
+
+        Request request = requests.get(url);
+        if (request == null) {
+            Long failureTime = failures.get(url);
+            if (failureTime != null && SystemClock.elapsedRealtime() - failureTime < RETRY_DELAY) {
+                nextRetryTime = Math.min(nextRetryTime, failureTime + RETRY_DELAY);
+                return;
+            }
+
+            // fetchers might deliver cached icons synchronously, register the request first
+            request = new Request();
+            updateRange(request, channelIndex);
+            requests.put(url, request);
+            fetcher.fetch(url, logoCache.getLogoSize(), this);
+        } else {
+            updateRange(request, channelIndex);
+        }
+    }
+
+    private static void updateRange(Request request, int channelIndex) {
+        request.firstChannel = Math.min(request.firstChannel, channelIndex);
+        request.lastChannel = Math.max(request.lastChannel, channelIndex);
+    }
+}
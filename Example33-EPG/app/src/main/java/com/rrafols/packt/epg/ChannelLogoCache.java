@@ -0,0 +1,166 @@
+package com.rrafols.packt.epg;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+
+/**
+ * Memory bounded cache of channel logos keyed by icon url. Logos are downsampled to fit the
+ * channel height before being stored and the bitmaps of evicted entries are reused for the
+ * next logos of the same size.
+ */
+public class ChannelLogoCache {
+    private static final int MAX_POOL_SIZE = 8;
+
+    private final LruCache<String, Bitmap> logos;
+    private final ArrayList<Bitmap> reusePool;
+    private final Canvas scaleCanvas;
+    private final Paint scalePaint;
+    private final Rect sourceRect;
+    private final Rect destinationRect;
+    private final int logoSize;
+
+    private int hitCount;
+    private int missCount;
+    private int evictionCount;
+    private int reuseCount;
+
+    /**
+     * @param maxBytes maximum size in bytes of all the cached logos
+     * @param logoSize maximum width and height of the logos
+     */
+    ChannelLogoCache(int maxBytes, int logoSize) {
+        this.logoSize = logoSize;
+
+        reusePool = new ArrayList<>(MAX_POOL_SIZE);
+        scaleCanvas = new Canvas();
+        scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        sourceRect = new Rect();
+        destinationRect = new Rect();
+
+        logos = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String url, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String url, Bitmap oldBitmap, Bitmap newBitmap) {
+                if (evicted) {
+                    evictionCount++;
+                    if (reusePool.size() < MAX_POOL_SIZE && oldBitmap.isMutable()) {
+                        reusePool.add(oldBitmap);
+                    }
+                }
+            }
+        };
+    }
+
+    int getLogoSize() {
+        return logoSize;
+    }
+
+    /**
+     * Return the logo of the given url or null if it is not in the cache. Updates the hit and
+     * miss counters.
+     */
+    Bitmap get(String url) {
+        Bitmap logo = logos.get(url);
+        if (logo != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+
+        return logo;
+    }
+
+    /**
+     * Check if a logo is in the cache without affecting the counters.
+     */
+    boolean contains(String url) {
+        return logos.get(url) != null;
+    }
+
+    /**
+     * Store a logo, downsampling it if it is bigger than the logo size. The source bitmap is
+     * not modified, as it might be owned by the image loading library.
+     */
+    void put(String url, Bitmap source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (width <= logoSize && height <= logoSize) {
+            logos.put(url, source);
+            return;
+        }
+
+        float scale = Math.min((float) logoSize / width, (float) logoSize / height);
+        int scaledWidth = Math.max(1, Math.round(width * scale));
+        int scaledHeight = Math.max(1, Math.round(height * scale));
+
+        Bitmap logo = obtainBitmap(scaledWidth, scaledHeight);
+        sourceRect.set(0, 0, width, height);
+        destinationRect.set(0, 0, scaledWidth, scaledHeight);
+        scaleCanvas.setBitmap(logo);
+        scaleCanvas.drawBitmap(source, sourceRect, destinationRect, scalePaint);
+        scaleCanvas.setBitmap(null);
+
+        logos.put(url, logo);
+    }
+
+    void clear() {
+        logos.evictAll();
+        reusePool.clear();
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getMissCount() {
+        return missCount;
+    }
+
+    public int getEvictionCount() {
+        return evictionCount;
+    }
+
+    public int getReuseCount() {
+        return reuseCount;
+    }
+
+    public int getSizeInBytes() {
+        return logos.size();
+    }
+
+    public int getMaxSizeInBytes() {
+        return logos.maxSize();
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelLogoCache[hits=" + hitCount
+                + " misses=" + missCount
+                + " evictions=" + evictionCount
+                + " reused=" + reuseCount
+                + " bytes=" + logos.size() + "/" + logos.maxSize() + "]";
+    }
+
+    private Bitmap obtainBitmap(int width, int height) {
+        for (int i = 0; i < reusePool.size(); i++) {
+            Bitmap bitmap = reusePool.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                reusePool.remove(i);
+                bitmap.eraseColor(0);
+                reuseCount++;
+                return bitmap;
+            }
+        }
+
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+}
@@ -0,0 +1,133 @@
+package com.rrafols.packt.epg;
+
+import com.rrafols.packt.epg.data.Channel;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Mapping between the rows shown by the EPG and the channels of the channel list. Filtering
+ * or sorting channels only builds a new permutation of channel positions, channels and
+ * their programs are not modified or copied.
+ */
+class ChannelView {
+    // channel position shown on every row
+    private final int[] rows;
+
+    // row of every channel or -1 if it is not shown
+    private final int[] channelRows;
+
+    // biggest channel position shown on rows 0 to i, to request data in channel order
+    private final int[] maxChannels;
+
+    private final boolean identity;
+
+    private ChannelView(int[] rows, int channelCount) {
+        this.rows = rows;
+
+        channelRows = new int[channelCount];
+        Arrays.fill(channelRows, -1);
+        maxChannels = new int[rows.length];
+
+        boolean identity = rows.length == channelCount;
+        int maxChannel = -1;
+        for (int i = 0; i < rows.length; i++) {
+            channelRows[rows[i]] = i;
+            maxChannel = Math.max(maxChannel, rows[i]);
+            maxChannels[i] = maxChannel;
+            identity &= rows[i] == i;
+        }
+        this.identity = identity;
+    }
+
+    /**
+     * Build the view of the channels accepted by filter, sorted by order. Both can be null
+     * to show all channels or to keep the channel list order. Sorting is stable.
+     */
+    static ChannelView build(Channel[] channels, EPG.ChannelFilter filter, Comparator<Channel> order) {
+        int[] rows = new int[channels.length];
+        int count = 0;
+        for (int i = 0; i < channels.length; i++) {
+            if (filter == null || filter.accept(channels[i])) rows[count++] = i;
+        }
+
+        rows = Arrays.copyOf(rows, count);
+        if (order != null) sort(rows, channels, order);
+
+        return new ChannelView(rows, channels.length);
+    }
+
+    int size() {
+        return rows.length;
+    }
+
+    /**
+     * Return the channel position shown on the given row.
+     */
+    int getChannel(int row) {
+        return rows[row];
+    }
+
+    /**
+     * Return the row showing the given channel position or -1 if it is not shown.
+     */
+    int getRow(int channel) {
+        return channel >= 0 && channel < channelRows.length ? channelRows[channel] : -1;
+    }
+
+    /**
+     * Return the biggest channel position shown from the first row up to the given one, or -1
+     * if there are no rows.
+     */
+    int getMaxChannel(int row) {
+        if (rows.length == 0) return -1;
+        return maxChannels[Math.max(0, Math.min(row, rows.length - 1))];
+    }
+
+    /**
+     * Check if all the channels are shown in the channel list order.
+     */
+    boolean isIdentity() {
+        return identity;
+    }
+
+    /**
+     * Return the channels in row order.
+     */
+    Channel[] getRowChannels(Channel[] channels) {
+        Channel[] rowChannels = new Channel[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            rowChannels[i] = channels[rows[i]];
+        }
+
+        return rowChannels;
+    }
+
+    /**
+     * Stable merge sort of channel positions, avoids boxing them to use Arrays.sort.
+     */
+    private static void sort(int[] rows, Channel[] channels, Comparator<Channel> order) {
+        int[] buffer = new int[rows.length];
+        for (int width = 1; width < rows.length; width *= 2) {
+            for (int low = 0; low < rows.length - width; low += width * 2) {
+                int middle = low + width;
+                int high = Math.min(low + width * 2, rows.length);
+
+                int i = low;
+                int j = middle;
+                int k = low;
+                while (i < middle && j < high) {
+                    if (order.compare(channels[rows[j]], channels[rows[i]]) < 0) {
+                        buffer[k++] = rows[j++];
+                    } else {
+                        buffer[k++] = rows[i++];
+                    }
+                }
+                while (i < middle) buffer[k++] = rows[i++];
+                while (j < high) buffer[k++] = rows[j++];
+
+                System.arraycopy(buffer, low, rows, low, high - low);
+            }
+        }
+    }
+}
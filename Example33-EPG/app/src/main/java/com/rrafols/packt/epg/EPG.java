@@ -7,7 +7,8 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.drawable.Drawable;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -15,17 +16,17 @@ import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
 import android.view.View;
 
+import com.rrafols.packt.epg.anim.Animator;
 import com.rrafols.packt.epg.data.Channel;
+import com.rrafols.packt.epg.data.NowPlayingTracker;
 import com.rrafols.packt.epg.data.Program;
-import com.squareup.picasso.Picasso;
-import com.squareup.picasso.Target;
+import com.rrafols.packt.epg.data.ProgramIndex;
+import com.rrafols.packt.epg.data.ScheduleDelta;
 
-import java.text.SimpleDateFormat;
+import java.io.File;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Locale;
+import java.util.Comparator;
+import java.util.List;
 
 public class EPG extends View {
     private static final String TAG = EPG.class.getName();
@@ -41,10 +42,31 @@ public class EPG extends View {
     private static final int TIME_THRESHOLD = 16;
     private static final float ANIM_THRESHOLD = 0.01f;
     private static final float TIMEBAR_HEIGHT = 18;
+    public static final int RENDER_MODE_DIRECT = 0;
+    public static final int RENDER_MODE_TILES = 1;
+    public static final int RENDER_MODE_DISPLAY_LIST = 2;
+    public static final int RENDER_MODE_SNAPSHOT = 3;
+
+    private static final int ZOOM_LEVELS_PER_OCTAVE = 16;
+
+    // below this zoom level programs are drawn as plain rects and tiny programs are merged
+    private static final int SIMPLE_DETAIL_ZOOM_LEVEL = -ZOOM_LEVELS_PER_OCTAVE / 2;
+    private static final float MIN_PROGRAM_WIDTH = 8;
+
+    // the last frame is kept at a quarter of the view size to restore it quickly
+    private static final int LAST_FRAME_SCALE = 4;
+
+    // the restored frame fades out once programs are drawn, or after this long if there are none
+    private static final long RESTORE_FRAME_TIMEOUT = 2000;
+    private static final int TEXT_LAYOUT_CACHE_SIZE = 2048;
+    private static final long FRAME_STATS_DUMP_INTERVAL = 10 * 1000;
 
     private final float channelHeight;
     private final float timebarHeight;
     private final float programMargin;
+    private final float minProgramWidth;
+    private final float minTextWidth;
+    private final float simpleDetailTimeScale;
     private final int highlightedProgramColor;
     private final int highlightedProgramTextColor;
     private final int programColor;
@@ -55,10 +77,21 @@ public class EPG extends View {
     private final Paint paintChannelText;
     private final Paint paintProgramText;
     private final Paint paintProgram;
+    private final Paint paintProgramBlock;
     private final Paint paintCurrentTime;
+    private final Paint paintRestoreFrame;
 
     private Channel[] channelList;
-    private ChannelIconTarget[] channelTargets;
+    private ChannelView channelView;
+    private ChannelView previousChannelView;
+    private float previousScrollY;
+    private ChannelFilter channelFilter;
+    private Comparator<Channel> channelOrder;
+    private final ChannelIconLoader iconLoader;
+    private final ChannelColumnCache columnCache;
+    private final ChannelColumnCache.Renderer columnRenderer;
+    private final ChannelLogoCache logoCache;
+    private float lastFrameScrollY;
     private int  backgroundColor;
 
     private float dragX;
@@ -82,16 +115,60 @@ public class EPG extends View {
     private long timeStart;
     private long accTime;
     private Context context;
-    private Rect textBoundaries;
     private Rect timeBarTextBoundaries;
+    private final TextLayoutCache channelTextLayouts;
+    private final TextLayoutCache programTextLayouts;
 
     private ScaleGestureDetector scaleDetector;
+    private boolean scaleInProgress;
+    private int renderMode;
+    private TileCache tileCache;
+    private ProgramDisplayList displayList;
+    private RenderSnapshotBuilder snapshotBuilder;
+    private RenderSnapshotBuilder.Request snapshotRequest;
+    private int contentVersion;
+    private ProgramAreaRenderer programAreaRenderer;
 
     private final long initialTimeValue;
-    private final Calendar calendar;
-    private final SimpleDateFormat dateFormatter = new SimpleDateFormat("HH:mm", Locale.US);
-    private final HashMap<Long, String> dateFormatted;
+    private final TimeAxis timeAxis;
     private EPGCallback callback;
+    private DataRequestListener dataRequestListener;
+    private ScheduleListener scheduleListener;
+    private ScheduleShards scheduleShards;
+    private final FrameStats frameStats;
+    private final NowPlayingTracker nowPlaying;
+    private int frameDrawCalls;
+    private int frameVisiblePrograms;
+    private int requestedChannel;
+    private long requestedEndTime;
+    private final ArrayList<ScheduleDelta> pendingDeltas;
+    private final Animator animator;
+    private final int viewTransition;
+    private float frViewTransition;
+    private final int restoreFade;
+    private float frRestoreFade;
+    private Bitmap restoreFrame;
+    private final Rect restoreFrameRect;
+    private long restoreFrameTime;
+    private boolean restoreFrameLoading;
+    private int restoreFrameLoads;
+
+    // set while drawing the last frame to save it, nothing but the bitmap can change meanwhile
+    private boolean drawingLastFrame;
+    private long lastFrameSignature;
+    private int logoVersion;
+    private final Runnable applyDeltasRunnable;
+    private final Runnable nowBarRunnable;
+    private final Runnable highlightRunnable;
+    private final Rect highlightDirtyRect;
+    private float nowBarDrawnX;
+
+    // tiny programs merged into a single block while drawing with simple detail
+    private boolean blockPending;
+    private float blockLeft;
+    private float blockTop;
+    private float blockRight;
+    private float blockBottom;
 
     public EPG(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -110,6 +187,11 @@ public class EPG extends View {
         paintProgram.setAntiAlias(true);
         paintProgram.setStyle(Paint.Style.FILL);
 
+        // plain rects are aligned to pixels, no need to anti-alias them
+        paintProgramBlock = new Paint();
+        paintProgramBlock.setAntiAlias(false);
+        paintProgramBlock.setStyle(Paint.Style.FILL);
+
         paintTimeBar = new Paint();
         paintTimeBar.setTextSize(30.f);
         paintTimeBar.setAntiAlias(true);
@@ -119,8 +201,12 @@ public class EPG extends View {
         paintCurrentTime = new Paint();
         paintCurrentTime.setStyle(Paint.Style.FILL);
 
+        paintRestoreFrame = new Paint();
+        paintRestoreFrame.setFilterBitmap(true);
+
         final float screenDensity = getResources().getDisplayMetrics().density;
 
+        int initialRenderMode;
         TypedArray ta = context.getTheme().obtainStyledAttributes(attrs, R.styleable.EPG, 0, 0);
         try {
             backgroundColor = ta.getColor(R.styleable.EPG_backgroundColor, BACKGROUND_COLOR);
@@ -142,12 +228,18 @@ public class EPG extends View {
             
             programTextColor = ta.getColor(R.styleable.EPG_programTextColor, Color.WHITE);
             highlightedProgramTextColor = ta.getColor(R.styleable.EPG_highlightedProgramTextColor, Color.BLACK);
+            initialRenderMode = ta.getInt(R.styleable.EPG_renderMode, RENDER_MODE_DIRECT);
 
         } finally {
             ta.recycle();
         }
 
         timeScale = DEFAULT_TIME_SCALE * screenDensity;
+        simpleDetailTimeScale = getZoomLevelScale(SIMPLE_DETAIL_ZOOM_LEVEL);
+        minProgramWidth = MIN_PROGRAM_WIDTH * screenDensity;
+
+        // narrower programs would only show an ellipsis, do not draw text at all
+        minTextWidth = paintProgramText.measureText("M\u2026");
 
         scrollX = 0.f;
         scrollY = 0.f;
@@ -163,6 +255,7 @@ public class EPG extends View {
             @Override
             public boolean onScaleBegin(ScaleGestureDetector detector) {
                 zooming = true;
+                scaleInProgress = true;
                 focusTime = getHorizontalPositionTime(scrollXTarget + detector.getFocusX() - frChNameWidth);
                 scrollCorrection = getTimeHorizontalPosition((focusTime)) - scrollXTarget;
                 return true;
@@ -186,6 +279,16 @@ public class EPG extends View {
             @Override
             public void onScaleEnd(ScaleGestureDetector detector) {
                 zooming = true;
+                scaleInProgress = false;
+
+                // cached tiles are rendered at discrete zoom levels, snap to the closest one
+                if (tileCache != null) {
+                    timeScale = getZoomLevelScale(getZoomLevel());
+
+                    float current = getTimeHorizontalPosition((focusTime)) - scrollXTarget;
+                    scrollXTarget += current - scrollCorrection;
+                    invalidate();
+                }
             }
         });
 
@@ -194,25 +297,607 @@ public class EPG extends View {
         shortChannelMode = true;
         switchNameWidth = false;
 
-        textBoundaries = new Rect();
+        channelTextLayouts = new TextLayoutCache(paintChannelText, TEXT_LAYOUT_CACHE_SIZE);
+        programTextLayouts = new TextLayoutCache(paintProgramText, TEXT_LAYOUT_CACHE_SIZE);
         timeStart = SystemClock.elapsedRealtime();
         initialTimeValue = System.currentTimeMillis() - 30 * 60 * 1000;
-        calendar = Calendar.getInstance();
+        timeAxis = new TimeAxis();
+        frameStats = new FrameStats(FRAME_STATS_DUMP_INTERVAL);
+        nowPlaying = new NowPlayingTracker();
+        animator = new Animator();
+        viewTransition = animator.register(1.f, 1.f);
+        frViewTransition = 1.f;
+        restoreFade = animator.register(0.f, 0.f);
+        restoreFrameRect = new Rect();
+        pendingDeltas = new ArrayList<>();
+        applyDeltasRunnable = new Runnable() {
+            @Override
+            public void run() {
+                applyScheduleDeltas();
+            }
+        };
+        highlightDirtyRect = new Rect();
+        nowBarRunnable = new Runnable() {
+            @Override
+            public void run() {
+                invalidateNowBar();
+            }
+        };
+        highlightRunnable = new Runnable() {
+            @Override
+            public void run() {
+                invalidate(highlightDirtyRect);
+            }
+        };
+
+        // logos are downsampled to fit inside the channel column, keep up to 1/32th of the heap
+        int logoCacheBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 32, Integer.MAX_VALUE);
+        logoCache = new ChannelLogoCache(logoCacheBytes, (int) (channelHeight - programMargin * 2));
+
+        iconLoader = new ChannelIconLoader(new PicassoIconFetcher(context), logoCache, new ChannelIconLoader.Listener() {
+            @Override
+            public void onIconLoaded() {
+                logoVersion++;
+                columnCache.invalidateIncomplete();
+                invalidate();
+            }
+        });
+
+        // channel column strips are as wide as the expanded column, keep up to 1/32th of the heap
+        int columnCacheBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 32, Integer.MAX_VALUE);
+        columnCache = new ChannelColumnCache(columnCacheBytes, channelHeight,
+                (int) Math.ceil(channelHeight * 2), backgroundColor);
+        columnRenderer = new ChannelColumnCache.Renderer() {
+            @Override
+            public boolean renderRow(Canvas canvas, int row, float channelTop) {
+                return drawChannelInfo(canvas, channelView.getChannel(row), channelTop);
+            }
+        };
 
-        dateFormatted = new HashMap<>();
+        renderMode = RENDER_MODE_DIRECT;
+        programAreaRenderer = new ProgramAreaRenderer() {
+            @Override
+            public long render(Canvas canvas, int firstChannel, int lastChannel,
+                                   float left, float right, long currentTime) {
+
+                // channels are rows of the current channel view
+                long nextHighlightChange = Long.MAX_VALUE;
+                for (int i = firstChannel; i <= lastChannel; i++) {
+                    float channelTop = (i - firstChannel) * channelHeight;
+                    long nextChange = drawChannelPrograms(canvas, channelView.getChannel(i),
+                            channelTop, -left, left, right, currentTime);
+
+                    nextHighlightChange = Math.min(nextHighlightChange, nextChange);
+                }
+                return nextHighlightChange;
+            }
+        };
+        setRenderMode(initialRenderMode);
     }
 
     public void setCallback(EPGCallback callback) {
         this.callback = callback;
     }
 
+    /**
+     * Set a listener to be notified when the visible window gets close to the edge of the
+     * data requested so far. Used when the guide is loaded incrementally.
+     */
+    public void setDataRequestListener(DataRequestListener dataRequestListener) {
+        this.dataRequestListener = dataRequestListener;
+        invalidate();
+    }
+
+    /**
+     * Set a listener to be notified of every program changed by the schedule deltas, so the
+     * owners of data derived from the schedule, such as search indexes or reminders, can
+     * update it. Called on the main thread.
+     */
+    public void setScheduleListener(ScheduleListener scheduleListener) {
+        this.scheduleListener = scheduleListener;
+    }
+
+    /**
+     * Load the guide by days instead of keeping the whole schedule resident. Days around the
+     * visible range are requested to the shard loader and the farthest ones are evicted when
+     * the schedule uses more than maxBytes.
+     */
+    public void setShardLoader(ShardLoader shardLoader, long maxBytes) {
+        scheduleShards = shardLoader != null ? new ScheduleShards(shardLoader, maxBytes) : null;
+        invalidate();
+    }
+
+    /**
+     * Notify that the programs of the day starting at dayStart, as requested to the
+     * ShardLoader, have been added to the channel list.
+     */
+    public void notifyShardLoaded(long dayStart) {
+        if (scheduleShards == null || channelList == null) return;
+
+        scheduleShards.onShardLoaded(channelList, dayStart,
+                getHorizontalPositionTime(frScrollX),
+                getHorizontalPositionTime(frScrollX + getWidth() - frChNameWidth));
+        notifyProgramsChanged(0, channelList.length - 1);
+    }
+
+    /**
+     * Set the channels of the guide. The current channel filter and order, if any, are
+     * applied to them.
+     */
     public void setChannelList(Channel[] channelList) {
         this.channelList = channelList;
-        this.channelTargets = new ChannelIconTarget[channelList.length];
+        channelView = ChannelView.build(channelList, channelFilter, channelOrder);
+        previousChannelView = null;
+        columnCache.invalidate();
+        iconLoader.setChannels(channelView.getRowChannels(channelList));
+        nowPlaying.setChannels(channelList);
+        if (tileCache != null) tileCache.clear();
+        if (displayList != null) displayList.invalidate();
+        if (scheduleShards != null) scheduleShards.clear();
+        if (snapshotBuilder != null) snapshotBuilder.clear();
+        snapshotRequest = null;
+        contentVersion++;
+
+        requestedChannel = -1;
+        requestedEndTime = Long.MIN_VALUE;
+        invalidate();
+    }
+
+    /**
+     * Only show the channels accepted by filter, sorted by order. Both can be null to show all
+     * channels or keep the channel list order. Channels are not copied or modified, rows are
+     * mapped to channel positions, and rows move to their new position with an animation.
+     */
+    public void setChannelView(ChannelFilter filter, Comparator<Channel> order) {
+        channelFilter = filter;
+        channelOrder = order;
+        if (channelList == null) return;
+
+        previousChannelView = channelView;
+        previousScrollY = frScrollY;
+        channelView = ChannelView.build(channelList, filter, order);
+        iconLoader.setChannels(channelView.getRowChannels(channelList));
+        columnCache.invalidate();
+
+        if (tileCache != null) tileCache.clear();
+        if (displayList != null) displayList.invalidate();
+        if (snapshotBuilder != null) snapshotBuilder.clear();
+        snapshotRequest = null;
+        contentVersion++;
+
+        // keep the scroll position if possible, rows already animate to their new position
+        scrollScreen(0, 0);
+        scrollY = scrollYTarget;
+        animator.jumpTo(viewTransition, 0.f);
+        animator.setTarget(viewTransition, 1.f);
+        invalidate();
+    }
+
+    /**
+     * Replace the source of channel icons, for instance by a FileIconFetcher.
+     */
+    public void setIconFetcher(IconFetcher iconFetcher) {
+        iconLoader.setFetcher(iconFetcher);
+        invalidate();
+    }
+
+    /**
+     * Enable or disable the per-phase frame timing. Statistics are dumped to the log
+     * periodically while enabled.
+     */
+    public void setFrameStatsEnabled(boolean enabled) {
+        frameStats.setEnabled(enabled);
+        invalidate();
+    }
+
+    public FrameStats getFrameStats() {
+        return frameStats;
+    }
+
+    /**
+     * Return the tracker of the program on air on every channel of the current channel list.
+     */
+    public NowPlayingTracker getNowPlayingTracker() {
+        return nowPlaying;
+    }
+
+    /**
+     * Return the channel logo cache, mostly to check its hit, miss and eviction counters.
+     */
+    public ChannelLogoCache getLogoCache() {
+        return logoCache;
+    }
+
+    /**
+     * Notify that programs have been added or modified on the given channel range.
+     */
+    public void notifyProgramsChanged(int firstChannel, int lastChannel) {
+        if (tileCache != null) invalidateChannelTiles(firstChannel, lastChannel);
+        if (displayList != null) displayList.invalidate();
+        contentVersion++;
+        invalidate();
+    }
+
+    /**
+     * Discard the tiles showing any of the channels in the given range. Tiles are rendered by
+     * row, so unless all channels are shown in order the row of every channel is checked.
+     */
+    private void invalidateChannelTiles(int firstChannel, int lastChannel) {
+        if (channelView == null || channelView.isIdentity()) {
+            tileCache.invalidateChannels(firstChannel, lastChannel);
+            return;
+        }
+
+        for (int i = firstChannel; i <= lastChannel; i++) {
+            int row = channelView.getRow(i);
+            if (row != -1) tileCache.invalidateChannels(row, row);
+        }
+    }
+
+    /**
+     * Queue an incremental schedule change. It can be called from any thread, all the
+     * changes queued before the next frame are merged together and only the screen region
+     * they affect is invalidated.
+     */
+    public void postScheduleDelta(ScheduleDelta delta) {
+        boolean schedule;
+        synchronized (pendingDeltas) {
+            schedule = pendingDeltas.isEmpty();
+            pendingDeltas.add(delta);
+        }
+
+        if (schedule) postOnAnimation(applyDeltasRunnable);
+    }
+
+    public void postScheduleDeltas(List<ScheduleDelta> deltas) {
+        boolean schedule;
+        synchronized (pendingDeltas) {
+            schedule = pendingDeltas.isEmpty();
+            pendingDeltas.addAll(deltas);
+        }
+
+        if (schedule && !deltas.isEmpty()) postOnAnimation(applyDeltasRunnable);
+    }
+
+    /**
+     * Merge all the pending schedule changes into the channel list. Deltas for channels or
+     * programs that do not exist are ignored. Inserting a program at a start time already
+     * on the channel replaces the existing program, as an update.
+     */
+    private void applyScheduleDeltas() {
+        ScheduleDelta[] deltas;
+        synchronized (pendingDeltas) {
+            deltas = pendingDeltas.toArray(new ScheduleDelta[pendingDeltas.size()]);
+            pendingDeltas.clear();
+        }
+
+        if (channelList == null) return;
+
+        int firstChannel = Integer.MAX_VALUE;
+        int lastChannel = -1;
+        int firstRow = Integer.MAX_VALUE;
+        int lastRow = -1;
+        long dirtyStart = Long.MAX_VALUE;
+        long dirtyEnd = Long.MIN_VALUE;
+        for (ScheduleDelta delta : deltas) {
+            int channelIndex = delta.getChannel();
+            if (channelIndex < 0 || channelIndex >= channelList.length) continue;
+
+            Channel channel = channelList[channelIndex];
+            int index = channel.indexOfProgram(delta.getStartTime());
+
+            // an insert at a start time already on the channel replaces that program, as an
+            // update would, so the channel never has two programs starting at the same time
+            if (index == -1 && delta.getType() != ScheduleDelta.INSERT) continue;
+
+            if (index != -1) {
+                ProgramIndex programIndex = channel.getProgramIndex();
+                dirtyStart = Math.min(dirtyStart, programIndex.getStartTime(index));
+                dirtyEnd = Math.max(dirtyEnd, programIndex.getEndTime(index));
+                channel.removeProgram(index);
+            }
+
+            Program program = delta.getProgram();
+            if (program != null) {
+                channel.addProgram(program);
+                dirtyStart = Math.min(dirtyStart, program.getStartTime());
+                dirtyEnd = Math.max(dirtyEnd, program.getEndTime());
+            }
+
+            if (scheduleListener != null) {
+                if (program == null) {
+                    scheduleListener.programRemoved(channelIndex, delta.getStartTime());
+                } else if (index == -1) {
+                    scheduleListener.programAdded(channelIndex, program);
+                } else {
+                    scheduleListener.programUpdated(channelIndex, delta.getStartTime(), program);
+                }
+            }
+
+            firstChannel = Math.min(firstChannel, channelIndex);
+            lastChannel = Math.max(lastChannel, channelIndex);
+
+            int row = channelView.getRow(channelIndex);
+            if (row != -1) {
+                firstRow = Math.min(firstRow, row);
+                lastRow = Math.max(lastRow, row);
+            }
+        }
+
+        if (lastChannel == -1) return;
+
+        if (tileCache != null) invalidateChannelTiles(firstChannel, lastChannel);
+        if (displayList != null) displayList.invalidate();
+        contentVersion++;
+
+        // changed channels might not be shown at all
+        if (lastRow == -1) return;
+
+        // only redraw the bounding box of the changes, if it is visible at all. This limits the
+        // redrawn area with software rendering only, accelerated windows run the whole onDraw
+        // again, where the cost is kept down by the tiles and snapshots of the other channels
+        int left = (int) Math.max(frChNameWidth,
+                frChNameWidth + getTimeHorizontalPosition(dirtyStart) - frScrollX);
+        int right = (int) Math.min(getWidth(),
+                Math.ceil(frChNameWidth + getTimeHorizontalPosition(dirtyEnd) - frScrollX));
+        int top = (int) Math.max(timebarHeight,
+                timebarHeight + firstRow * channelHeight - frScrollY);
+        int bottom = (int) Math.min(getHeight(),
+                Math.ceil(timebarHeight + (lastRow + 1) * channelHeight - frScrollY));
+
+        if (left < right && top < bottom) invalidate(left, top, right, bottom);
+    }
+
+    /**
+     * Scroll to show a program at the left of the program area, with its channel vertically
+     * centered if possible. For instance, to show a ProgramSearchIndex result.
+     *
+     * @param animate animate the scroll or jump directly to the program
+     */
+    public void scrollToProgram(int channel, long startTime, boolean animate) {
+        if (channelList == null) return;
+
+        // the channel might be filtered out of the current channel view
+        int row = channelView.getRow(channel);
+        if (row == -1) return;
+
+        float programAreaHeight = getHeight() - timebarHeight;
+        float x = getTimeHorizontalPosition(startTime) - programMargin;
+        float y = row * channelHeight - (programAreaHeight - channelHeight) / 2;
+        scrollScreen(x - scrollXTarget, y - scrollYTarget);
+
+        if (!animate) {
+            scrollX = scrollXTarget;
+            scrollY = scrollYTarget;
+        }
+    }
+
+    /**
+     * Select how the program grid is rendered:
+     * RENDER_MODE_DIRECT draws every visible program on every frame.
+     * RENDER_MODE_TILES rasterizes the grid into bitmap tiles reused while scrolling, zoom
+     * snaps to discrete levels in this mode.
+     * RENDER_MODE_DISPLAY_LIST records the visible window plus a margin and replays it while
+     * scrolling stays inside the recorded area.
+     * RENDER_MODE_SNAPSHOT projects the visible window plus a margin on a background thread
+     * and only replays the precomputed primitives on the UI thread.
+     *
+     * The initial mode is set with the renderMode layout attribute, direct by default.
+     */
+    public void setRenderMode(int renderMode) {
+        if (renderMode == this.renderMode) return;
+
+        if (tileCache != null) {
+            tileCache.clear();
+            tileCache = null;
+        }
+        displayList = null;
+        if (snapshotBuilder != null) {
+            snapshotBuilder.stop();
+            snapshotBuilder = null;
+            snapshotRequest = null;
+        }
+
+        if (renderMode == RENDER_MODE_TILES) {
+            // use up to 1/8th of the available heap for tiles
+            int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+            tileCache = new TileCache(maxBytes, channelHeight, backgroundColor);
+            timeScale = getZoomLevelScale(getZoomLevel());
+        } else if (renderMode == RENDER_MODE_DISPLAY_LIST) {
+            displayList = new ProgramDisplayList(channelHeight);
+        } else if (renderMode == RENDER_MODE_SNAPSHOT) {
+            snapshotBuilder = new RenderSnapshotBuilder(paintProgramText, channelHeight,
+                    programMargin, TEXT_LAYOUT_CACHE_SIZE, new RenderSnapshotBuilder.Listener() {
+                @Override
+                public void onSnapshotReady() {
+                    postInvalidate();
+                }
+            });
+
+            // otherwise started once attached, the builder thread stops when detached
+            if (isAttachedToWindow()) snapshotBuilder.start();
+        }
+
+        this.renderMode = renderMode;
+        invalidate();
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        // positions are relative to a time taken when the view is created, save the time
+        state.scrollTime = getHorizontalPositionTime(scrollXTarget);
+        state.scrollY = scrollYTarget;
+        state.timeScale = timeScale;
+        state.shortChannelMode = shortChannelMode;
+
+        if (restoreFrameLoading
+                || (restoreFrame != null && animator.getTarget(restoreFade) != 0.f)) {
+            // still loading it or waiting for programs, the stored frame is the last useful one
+            state.frameWidth = restoreFrameRect.width();
+            state.frameHeight = restoreFrameRect.height();
+        } else if (channelList != null && getWidth() > 0 && getHeight() > 0) {
+            saveLastFrame();
+            state.frameWidth = getWidth();
+            state.frameHeight = getHeight();
+        }
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+
+        // scroll is not clamped, channels might not be there yet
+        timeScale = savedState.timeScale;
+        if (tileCache != null) timeScale = getZoomLevelScale(getZoomLevel());
+        scrollX = scrollXTarget = frScrollX = getTimeHorizontalPosition(savedState.scrollTime);
+        scrollY = scrollYTarget = frScrollY = savedState.scrollY;
+        if (displayList != null) displayList.invalidate();
+
+        shortChannelMode = savedState.shortChannelMode;
+        chNameWidthTarget = shortChannelMode ? channelHeight : channelHeight * 2;
+        chNameWidth = frChNameWidth = chNameWidthTarget;
+
+        // show the last frame until programs are drawn, even if channels are already set their
+        // schedules, logos or snapshots might still be loading
+        if (savedState.frameWidth > 0) {
+            restoreFrameRect.set(0, 0, savedState.frameWidth, savedState.frameHeight);
+            restoreFrameLoading = true;
+
+            final int load = ++restoreFrameLoads;
+            LastFrameStore.load(getLastFrameFile(), new LastFrameStore.Callback() {
+                @Override
+                public void onFrameLoaded(Bitmap frame) {
+                    if (load != restoreFrameLoads) return;
+                    onRestoreFrameLoaded(frame);
+                }
+            });
+        }
+        invalidate();
+    }
+
+    private void onRestoreFrameLoaded(Bitmap frame) {
+        restoreFrameLoading = false;
+
+        // programs drawn while decoding, showing the frame would only flash an older state
+        if (frame == null || frameVisiblePrograms > 0) return;
+
+        restoreFrame = frame;
+        restoreFrameTime = SystemClock.uptimeMillis();
+        animator.jumpTo(restoreFade, 1.f);
+        frRestoreFade = 1.f;
+        invalidate();
+    }
+
+    /**
+     * Draw the guide into a downscaled bitmap and keep it as the last frame, unless the last
+     * frame saved is still the same. Unlike onDraw, nothing is animated, requested or scheduled.
+     */
+    private void saveLastFrame() {
+        long currentTime = System.currentTimeMillis();
+        long signature = getLastFrameSignature(currentTime);
+        if (signature == lastFrameSignature) return;
+
+        int width = Math.max(1, getWidth() / LAST_FRAME_SCALE);
+        int height = Math.max(1, getHeight() / LAST_FRAME_SCALE);
+
+        // the guide background is opaque, no need for an alpha channel
+        Bitmap frame = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        Canvas canvas = new Canvas(frame);
+        canvas.scale((float) width / getWidth(), (float) height / getHeight());
+
+        drawingLastFrame = true;
+        try {
+            drawBackground(canvas);
+            drawEPGBody(canvas, currentTime, frScrollY);
+            drawTimeBar(canvas, currentTime);
+            drawCurrentTime(canvas, currentTime);
+        } finally {
+            drawingLastFrame = false;
+        }
+
+        LastFrameStore.save(frame, getLastFrameFile());
+        lastFrameSignature = signature;
+    }
+
+    /**
+     * Hash of everything visible on the last frame. Highlights only change as the current
+     * time bar moves, so its position on the downscaled frame stands for the current time.
+     */
+    private long getLastFrameSignature(long currentTime) {
+        long signature = contentVersion;
+        signature = signature * 31 + logoVersion;
+        signature = signature * 31 + Float.floatToIntBits(frScrollX);
+        signature = signature * 31 + Float.floatToIntBits(frScrollY);
+        signature = signature * 31 + Float.floatToIntBits(timeScale);
+        signature = signature * 31 + Float.floatToIntBits(frChNameWidth);
+        signature = signature * 31 + getWidth();
+        signature = signature * 31 + getHeight();
+        signature = signature * 31 + (int) (getCurrentTimePosition(currentTime) / LAST_FRAME_SCALE);
+        return signature;
+    }
+
+    private File getLastFrameFile() {
+        return new File(context.getCacheDir(), "epg_last_frame_" + getId() + ".png");
+    }
+
+    /**
+     * Draw the restored last frame on top of everything. It is shown opaque until a frame
+     * with programs has been drawn underneath and then cross-faded to the live rendering.
+     */
+    private void drawRestoreFrame(Canvas canvas) {
+        if (restoreFrame == null) return;
+
+        if (animator.getTarget(restoreFade) != 0.f) {
+            long waiting = SystemClock.uptimeMillis() - restoreFrameTime;
+            if (frameVisiblePrograms > 0 || waiting >= RESTORE_FRAME_TIMEOUT) {
+                animator.setTarget(restoreFade, 0.f);
+            } else {
+                // nothing might be drawn or animated meanwhile, check again once it times out
+                postInvalidateDelayed(RESTORE_FRAME_TIMEOUT - waiting);
+            }
+        } else if (!animator.isAnimating(restoreFade)) {
+            // the bitmap is still held by the store, do not recycle it
+            restoreFrame = null;
+            return;
+        }
+
+        paintRestoreFrame.setAlpha((int) (frRestoreFade * 255));
+        canvas.drawBitmap(restoreFrame, null, restoreFrameRect, paintRestoreFrame);
+        frameDrawCalls++;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (snapshotBuilder != null) snapshotBuilder.start();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        if (snapshotBuilder != null) snapshotBuilder.stop();
+        snapshotRequest = null;
+        removeCallbacks(nowBarRunnable);
+        removeCallbacks(highlightRunnable);
+
+        // strips are rendered again if attached back, do not keep their bitmaps meanwhile
+        columnCache.clear();
+        super.onDetachedFromWindow();
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
+        frameStats.beginFrame();
+        frameDrawCalls = 0;
+        frameVisiblePrograms = 0;
+
         animateLogic();
 
         if (switchNameWidth) {
@@ -227,50 +912,178 @@ public class EPG extends View {
         }
 
         long currentTime = System.currentTimeMillis();
+        frameStats.endPhase(FrameStats.PHASE_ANIMATE);
 
         drawBackground(canvas);
-        drawEPGBody(canvas, currentTime, frScrollY);
+        frameStats.endPhase(FrameStats.PHASE_BACKGROUND);
+
+        if (channelList != null) {
+            drawEPGBody(canvas, currentTime, frScrollY);
+            checkDataRequest();
+            if (scheduleShards != null) {
+                scheduleShards.update(getHorizontalPositionTime(frScrollX),
+                        getHorizontalPositionTime(frScrollX + getWidth() - frChNameWidth),
+                        SystemClock.uptimeMillis());
+            }
+        }
+        frameStats.endPhase(FrameStats.PHASE_BODY);
+
         drawTimeBar(canvas, currentTime);
+        frameStats.endPhase(FrameStats.PHASE_TIME_BAR);
+
         drawCurrentTime(canvas, currentTime);
+        drawRestoreFrame(canvas);
+        frameStats.endPhase(FrameStats.PHASE_CURRENT_TIME);
+        frameStats.endFrame(frameDrawCalls, frameVisiblePrograms);
 
-        if (missingAnimations()) invalidate();
+        if (missingAnimations()) {
+            invalidate();
+        } else {
+            scheduleTimedInvalidations(currentTime);
+        }
+    }
+
+    /**
+     * While idle, only redraw when the current time bar moves to the next pixel or when the
+     * highlight of a visible program changes. Only the affected rectangles are invalidated,
+     * which limits the redrawn area on software rendered windows. Hardware accelerated windows
+     * run the whole onDraw again for any invalidation, there the savings come from not
+     * redrawing continuously.
+     */
+    private void scheduleTimedInvalidations(long currentTime) {
+        removeCallbacks(nowBarRunnable);
+        removeCallbacks(highlightRunnable);
+
+        // the bar moves timeScale pixels per millisecond, wait until it enters the screen
+        // or until it crosses the next pixel boundary
+        if (nowBarDrawnX < getWidth() + programMargin) {
+            float nextX = nowBarDrawnX < -programMargin ?
+                    -programMargin : (float) Math.floor(nowBarDrawnX) + 1;
+            long delay = (long) Math.ceil((nextX - nowBarDrawnX) / timeScale);
+            postDelayed(nowBarRunnable, Math.max(1, delay));
+        }
+
+        if (channelList != null) {
+            long nextChange = computeNextHighlightChange(currentTime);
+            if (nextChange != Long.MAX_VALUE && !highlightDirtyRect.isEmpty()) {
+                // one extra millisecond so the frame is drawn after the change
+                postDelayed(highlightRunnable, nextChange - currentTime + 1);
+            }
+        }
+    }
+
+    /**
+     * Invalidate the area between the last drawn current time bar and its current position.
+     */
+    private void invalidateNowBar() {
+        float x = getCurrentTimePosition(System.currentTimeMillis());
+        int left = (int) Math.floor(Math.min(nowBarDrawnX, x) - programMargin / 2) - 1;
+        int right = (int) Math.ceil(Math.max(nowBarDrawnX, x) + programMargin / 2) + 1;
+        invalidate(Math.max(0, left), 0, Math.min(getWidth(), right), getHeight());
+    }
+
+    /**
+     * Return the next time a visible program starts or stops being highlighted and set
+     * highlightDirtyRect to the area of the programs changing at that time.
+     */
+    private long computeNextHighlightChange(long currentTime) {
+        int startRow = (int) (frScrollY / channelHeight);
+        int endRow = Math.min(channelView.size() - 1,
+                startRow + (int) ((getHeight() - timebarHeight) / channelHeight) + 1);
+
+        long nextChange = Long.MAX_VALUE;
+        long dirtyStart = 0;
+        long dirtyEnd = 0;
+        int firstRow = 0;
+        int lastRow = 0;
+        for (int row = startRow; row <= endRow; row++) {
+            int channel = channelView.getChannel(row);
+            ProgramIndex programIndex = channelList[channel].getProgramIndex();
+            int now = nowPlaying.getNowIndex(channel, currentTime);
+            int next = nowPlaying.getNextIndex(channel, currentTime);
+
+            long change = Math.min(now != -1 ? programIndex.getEndTime(now) : Long.MAX_VALUE,
+                    next != -1 ? programIndex.getStartTime(next) : Long.MAX_VALUE);
+            if (change == Long.MAX_VALUE || change > nextChange) continue;
+
+            // programs changing at that time, the one ending and the one starting
+            long start = Long.MAX_VALUE;
+            long end = Long.MIN_VALUE;
+            if (now != -1 && programIndex.getEndTime(now) == change) {
+                start = programIndex.getStartTime(now);
+                end = change;
+            }
+            if (next != -1 && programIndex.getStartTime(next) == change) {
+                start = Math.min(start, change);
+                end = Math.max(end, programIndex.getEndTime(next));
+            }
+
+            if (change < nextChange) {
+                nextChange = change;
+                dirtyStart = start;
+                dirtyEnd = end;
+                firstRow = row;
+            } else {
+                dirtyStart = Math.min(dirtyStart, start);
+                dirtyEnd = Math.max(dirtyEnd, end);
+            }
+            lastRow = row;
+        }
+
+        if (nextChange == Long.MAX_VALUE) {
+            highlightDirtyRect.setEmpty();
+            return nextChange;
+        }
+
+        int left = (int) Math.max(frChNameWidth,
+                frChNameWidth + getTimeHorizontalPosition(dirtyStart) - frScrollX);
+        int right = (int) Math.min(getWidth(),
+                Math.ceil(frChNameWidth + getTimeHorizontalPosition(dirtyEnd) - frScrollX));
+        int top = (int) Math.max(timebarHeight,
+                timebarHeight + firstRow * channelHeight - frScrollY);
+        int bottom = (int) Math.min(getHeight(),
+                Math.ceil(timebarHeight + (lastRow + 1) * channelHeight - frScrollY));
+
+        if (left < right && top < bottom) {
+            highlightDirtyRect.set(left, top, right, bottom);
+        } else {
+            highlightDirtyRect.setEmpty();
+        }
+        return nextChange;
     }
 
     /**
-     * Draw the horizontal top bar with half-hour indications.
+     * Draw the horizontal top bar with the time ticks and their labels.
      */
     private void drawTimeBar(Canvas canvas, long currentTime) {
-        calendar.setTimeInMillis(initialTimeValue - 120 * 60 * 1000);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
-        calendar.set(Calendar.MILLISECOND, 0);
+        float labelWidth = timeBarTextBoundaries.width() + programMargin * 2;
+        timeAxis.setTimeScale(timeScale, labelWidth, getWidth());
+        long tickInterval = timeAxis.getTickInterval();
+        float[] tickOffsets = timeAxis.getTickOffsets();
+        int tickCount = timeAxis.getTickCount();
 
-        long time = calendar.getTimeInMillis();
-        float x = getTimeHorizontalPosition(time) - frScrollX + getWidth() / 4.f;
+        // start from the last tick before the left edge, including labels partially visible
+        long time = timeAxis.getTickAtOrBefore(
+                getHorizontalPositionTime(frScrollX - getWidth() / 4.f - labelWidth));
+        float firstX = getTimeHorizontalPosition(time) - frScrollX + getWidth() / 4.f;
+
+        for (int i = 0; i < tickCount; i++, time += tickInterval) {
+            float x = firstX + tickOffsets[i];
+            if (x >= getWidth()) break;
 
-        while (x < getWidth()) {
             if (x > 0) {
                 canvas.drawLine(x, 0, x, timebarHeight, paintTimeBar);
+                frameDrawCalls++;
             }
 
             if (x + timeBarTextBoundaries.width() > 0) {
-                String date = null;
-                if (dateFormatted.containsKey(time)) {
-                    date = dateFormatted.get(time);
-                } else {
-                    date = dateFormatter.format(new Date(time));
-                    dateFormatted.put(time, date);
-                }
-
-                canvas.drawText(date,
+                canvas.drawText(timeAxis.getLabel(time),
                         x + programMargin,
                         (timebarHeight - timeBarTextBoundaries.height()) / 2.f
                                 + timeBarTextBoundaries.height(),
                         paintTimeBar);
+                frameDrawCalls++;
             }
-
-            time += 30 * 60 * 1000;
-            x = getTimeHorizontalPosition(time) - frScrollX + getWidth() / 4.f;
         }
 
         canvas.drawLine(0,
@@ -278,6 +1091,7 @@ public class EPG extends View {
                 getWidth(),
                 timebarHeight,
                 paintTimeBar);
+        frameDrawCalls++;
     }
 
     /**
@@ -286,13 +1100,22 @@ public class EPG extends View {
     private void drawBackground(Canvas canvas) {
         canvas.drawARGB(backgroundColor >> 24, (backgroundColor >> 16) & 0xff,
                 (backgroundColor >> 8) & 0xff, backgroundColor & 0xff);
+        frameDrawCalls++;
+    }
+
+    /**
+     * Return the horizontal screen position of the current time bar.
+     */
+    private float getCurrentTimePosition(long currentTime) {
+        return frChNameWidth + getTimeHorizontalPosition(currentTime) - frScrollX;
     }
 
     /**
      * Draw a vertical bar on the current time
      */
     private void drawCurrentTime(Canvas canvas, long currentTime) {
-        float currentTimePos = frChNameWidth + getTimeHorizontalPosition(currentTime) - frScrollX;
+        float currentTimePos = getCurrentTimePosition(currentTime);
+        if (!drawingLastFrame) nowBarDrawnX = currentTimePos;
         canvas.drawRect(currentTimePos - programMargin/2,
                 0,
                 currentTimePos + programMargin/2,
@@ -305,105 +1128,453 @@ public class EPG extends View {
                 currentTimePos + programMargin/2,
                 getHeight(),
                 paintCurrentTime);
+        frameDrawCalls += 2;
     }
 
     private void drawEPGBody(Canvas canvas, long currentTime, float verticalOffset) {
-        // compute initial and end channel to draw based on the scroll position and screen size
-        int startChannel = (int) (frScrollY / channelHeight);
-        verticalOffset -= startChannel * channelHeight;
-        int endChannel = startChannel + (int) ((getHeight() -  timebarHeight) / channelHeight) + 1;
-        if (endChannel >= channelList.length) endChannel = channelList.length - 1;
+        // compute initial and end row to draw based on the scroll position and screen size
+        int rowCount = channelView.size();
+        int startRow = (int) (frScrollY / channelHeight);
+        verticalOffset -= startRow * channelHeight;
+        int endRow = startRow + (int) ((getHeight() -  timebarHeight) / channelHeight) + 1;
+        if (endRow >= rowCount) endRow = rowCount - 1;
 
         canvas.save();
         canvas.clipRect(0, timebarHeight, getWidth(), getHeight());
-        for (int i = startChannel; i <= endChannel; i++) {
-            float channelTop = (i - startChannel) * channelHeight - verticalOffset + timebarHeight;
-            float channelBottom = channelTop + channelHeight;
-
-            // draw channel text only when channel is expanded
-            if (!shortChannelMode) {
-                paintChannelText.getTextBounds(channelList[i].getName(),
-                        0,
-                        channelList[i].getName().length(),
-                        textBoundaries);
 
-                canvas.drawText(channelList[i].getName(),
-                        channelHeight - programMargin * 2,
-                        (channelHeight - textBoundaries.height()) / 2 + textBoundaries.height() + channelTop,
-                        paintChannelText);
+        if (previousChannelView != null) {
+            // rows are moving, cached renderings only know about their final position
+            drawViewTransition(canvas, currentTime, startRow, endRow);
+            canvas.restore();
+            if (!drawingLastFrame) {
+                iconLoader.update(startRow, endRow, 0);
+                lastFrameScrollY = frScrollY;
             }
-            canvas.drawLine(0, channelBottom, getWidth(), channelBottom, paintChannelText);
+            return;
+        }
 
-            if (channelList[i].getIcon() != null) {
-                float iconMargin = (channelHeight - channelList[i].getIcon().getHeight()) / 2;
-                canvas.drawBitmap(channelList[i].getIcon(), iconMargin, channelTop + iconMargin, null);
-            } else {
-                if (channelTargets[i] == null) {
-                    channelTargets[i] = new ChannelIconTarget(channelList[i]);
-                }
+        boolean tilesDrawn = false;
+        if (tileCache != null && !scaleInProgress && timeScale == getZoomLevelScale(getZoomLevel())) {
+            canvas.save();
+            canvas.clipRect(frChNameWidth, timebarHeight, getWidth(), getHeight());
+            int tiles = tileCache.draw(canvas, programAreaRenderer, getZoomLevel(),
+                    frScrollX, frScrollY, frChNameWidth, timebarHeight,
+                    getWidth(), getHeight(), rowCount, currentTime);
+            canvas.restore();
 
-                Picasso.with(context)
-                        .load(channelList[i]
-                        .getIconUrl())
-                        .into(channelTargets[i]);
-            }
+            tilesDrawn = tiles != -1;
+            if (tilesDrawn) frameDrawCalls += tiles;
+        }
 
+        // recording while zooming is pointless, the time scale changes every frame
+        boolean useDisplayList = displayList != null && !scaleInProgress
+                && ProgramDisplayList.isSupported(canvas);
+
+        RenderSnapshot snapshot = snapshotBuilder != null ? obtainSnapshot(currentTime) : null;
+
+        // the channel column only changes with the width mode, use the cached strips once the
+        // width animation has settled
+        boolean columnDrawn = false;
+        if (Math.abs(chNameWidthTarget - frChNameWidth) <= ANIM_THRESHOLD) {
             canvas.save();
-            canvas.clipRect(frChNameWidth, 0, getWidth(), getHeight());
-            float horizontalOffset = frChNameWidth - frScrollX;
-            ArrayList<Program> programs = channelList[i].getPrograms();
-            for (int j = 0; j < programs.size(); j++) {
-                Program program = programs.get(j);
-
-                long st = program.getStartTime();
-                long et = program.getEndTime();
-
-                float programStartX = getTimeHorizontalPosition(st);
-                float programEndX = getTimeHorizontalPosition(et);
-
-                // if program start position is bigger than the screen width we can discard
-                // this item and the following programs we will be outside of the screen.
-                if (programStartX - frScrollX > getWidth()) break;
-
-                // if program end is before the start of the drawing area, we can skip it.
-                if (programEndX - frScrollX >= 0) {
-                    // highlight program if it is currently playing
-                    if (st <= currentTime && et > currentTime) {
-                        paintProgram.setColor(highlightedProgramColor);
-                        paintProgramText.setColor(highlightedProgramTextColor);
-                    } else {
-                        paintProgram.setColor(programColor);
-                        paintProgramText.setColor(programTextColor);
-                    }
+            canvas.clipRect(0, timebarHeight, frChNameWidth, getHeight());
+            int strips = columnCache.draw(canvas, columnRenderer, shortChannelMode ? 1 : 0,
+                    frScrollY, timebarHeight, getHeight(), rowCount);
+            canvas.restore();
 
-                    canvas.drawRoundRect(horizontalOffset + programMargin + programStartX,
-                            channelTop + programMargin,
-                            horizontalOffset - programMargin + programEndX,
-                            channelBottom - programMargin,
-                            programMargin,
-                            programMargin,
-                            paintProgram);
+            columnDrawn = strips != -1;
+            if (columnDrawn) frameDrawCalls += strips;
+        }
 
+        for (int row = startRow; row <= endRow; row++) {
+            int i = channelView.getChannel(row);
+            float channelTop = (row - startRow) * channelHeight - verticalOffset + timebarHeight;
+            float channelBottom = channelTop + channelHeight;
+
+            if (!columnDrawn) {
+                if (tilesDrawn) {
+                    // tiles are already on screen, do not let the channel name overflow on them
                     canvas.save();
-                    canvas.clipRect(horizontalOffset + programMargin * 2 + programStartX,
-                            channelTop + programMargin,
-                            horizontalOffset - programMargin * 2 + programEndX,
-                            channelBottom - programMargin);
-
-                    paintProgramText.getTextBounds(program.getName(), 0, program.getName().length(), textBoundaries);
-                    float textPosition = channelTop + textBoundaries.height() + ((channelHeight - programMargin * 2) - textBoundaries.height()) / 2;
-                    canvas.drawText(program.getName(),
-                                horizontalOffset + programMargin * 2 + programStartX,
-                                textPosition,
-                                paintProgramText);
+                    canvas.clipRect(0, 0, frChNameWidth, getHeight());
+                    drawChannelInfo(canvas, i, channelTop);
                     canvas.restore();
+                } else {
+                    drawChannelInfo(canvas, i, channelTop);
                 }
             }
+            canvas.drawLine(0, channelBottom, getWidth(), channelBottom, paintChannelText);
+            frameDrawCalls++;
+
+            if (!tilesDrawn && !useDisplayList && snapshot == null) {
+                canvas.save();
+                canvas.clipRect(frChNameWidth, 0, getWidth(), getHeight());
+                drawChannelPrograms(canvas, i, channelTop, frChNameWidth - frScrollX,
+                        frScrollX, frScrollX + getWidth(), currentTime);
+                canvas.restore();
+            }
+        }
 
+        if (useDisplayList) {
+            canvas.save();
+            canvas.clipRect(frChNameWidth, timebarHeight, getWidth(), getHeight());
+            displayList.draw(canvas, programAreaRenderer, timeScale,
+                    frScrollX, frScrollY, frChNameWidth, timebarHeight,
+                    getWidth(), getHeight(), rowCount, currentTime);
+            canvas.restore();
+            frameDrawCalls++;
+        } else if (snapshot != null) {
+            canvas.save();
+            canvas.clipRect(frChNameWidth, timebarHeight, getWidth(), getHeight());
+            drawSnapshot(canvas, snapshot);
             canvas.restore();
         }
+
         canvas.drawLine(frChNameWidth, timebarHeight, frChNameWidth, getHeight(), paintChannelText);
+        frameDrawCalls++;
         canvas.restore();
+
+        // missing icons are requested once the visible range is known
+        if (!drawingLastFrame) {
+            int direction = (int) Math.signum(frScrollY - lastFrameScrollY);
+            iconLoader.update(startRow, endRow, direction);
+            lastFrameScrollY = frScrollY;
+        }
+    }
+
+    /**
+     * Draw the channels moving from their row on the previous channel view to their row on the
+     * current one. Channels not shown before come in from the bottom, channels not shown
+     * anymore are not drawn.
+     */
+    private void drawViewTransition(Canvas canvas, long currentTime, int startRow, int endRow) {
+        float fraction = frViewTransition;
+        int previousStartRow = (int) (previousScrollY / channelHeight);
+        int previousEndRow = Math.min(previousChannelView.size() - 1,
+                previousStartRow + (int) ((getHeight() - timebarHeight) / channelHeight) + 1);
+
+        for (int row = startRow; row <= endRow; row++) {
+            int channel = channelView.getChannel(row);
+            drawMovingChannel(canvas, channel, previousChannelView.getRow(channel), row,
+                    fraction, currentTime);
+        }
+
+        // channels leaving the screen towards a row outside of the visible range
+        for (int previousRow = previousStartRow; previousRow <= previousEndRow; previousRow++) {
+            int channel = previousChannelView.getChannel(previousRow);
+            int row = channelView.getRow(channel);
+            if (row != -1 && (row < startRow || row > endRow)) {
+                drawMovingChannel(canvas, channel, previousRow, row, fraction, currentTime);
+            }
+        }
+
+        canvas.drawLine(frChNameWidth, timebarHeight, frChNameWidth, getHeight(), paintChannelText);
+        frameDrawCalls++;
+    }
+
+    private void drawMovingChannel(Canvas canvas, int channel, int previousRow, int row,
+                                   float fraction, long currentTime) {
+        // rows far away are clamped right outside of the screen, so they move as fast as the rest
+        float minTop = timebarHeight - channelHeight;
+        float maxTop = getHeight();
+        float from = previousRow == -1 ? maxTop : Math.max(minTop, Math.min(maxTop,
+                timebarHeight + previousRow * channelHeight - previousScrollY));
+        float to = Math.max(minTop, Math.min(maxTop,
+                timebarHeight + row * channelHeight - frScrollY));
+
+        float channelTop = from + (to - from) * fraction;
+        float channelBottom = channelTop + channelHeight;
+        if (channelBottom <= timebarHeight || channelTop >= getHeight()) return;
+
+        drawChannelInfo(canvas, channel, channelTop);
+        canvas.drawLine(0, channelBottom, getWidth(), channelBottom, paintChannelText);
+        frameDrawCalls++;
+
+        canvas.save();
+        canvas.clipRect(frChNameWidth, 0, getWidth(), getHeight());
+        drawChannelPrograms(canvas, channel, channelTop, frChNameWidth - frScrollX,
+                frScrollX, frScrollX + getWidth(), currentTime);
+        canvas.restore();
+    }
+
+    /**
+     * Return the latest snapshot if it covers the visible window, projected if it has been
+     * built at another time scale, or null if programs have to be drawn directly. A new
+     * snapshot is requested unless an exact one is available or already being built.
+     */
+    private RenderSnapshot obtainSnapshot(long currentTime) {
+        float areaWidth = getWidth() - frChNameWidth;
+        float areaHeight = getHeight() - timebarHeight;
+
+        RenderSnapshot snapshot = snapshotBuilder.getSnapshot();
+        boolean usable = snapshot != null
+                && snapshot.contentVersion == contentVersion
+                && snapshot.channelCount == channelView.size()
+                && currentTime < snapshot.validUntil
+                && snapshot.covers(frScrollX, frScrollY, areaWidth, areaHeight, timeScale, channelHeight);
+
+        if (!usable || snapshot.timeScale != timeScale) {
+            RenderSnapshotBuilder.Request request = snapshotRequest;
+
+            // a request built from an older time than the snapshot expiration is not enough
+            boolean pending = request != null
+                    && request.contentVersion == contentVersion
+                    && request.timeScale == timeScale
+                    && request.channelCount == channelView.size()
+                    && (snapshot == null || currentTime < snapshot.validUntil
+                        || request.currentTime >= snapshot.validUntil)
+                    && RenderSnapshot.covers(request.left, request.right,
+                        request.firstChannel, request.lastChannel, request.timeScale,
+                        request.channelCount, frScrollX, frScrollY, areaWidth, areaHeight,
+                        timeScale, channelHeight);
+
+            if (!pending && !drawingLastFrame) requestSnapshot(currentTime, areaWidth, areaHeight);
+        }
+
+        return usable ? snapshot : null;
+    }
+
+    /**
+     * Request a snapshot of the visible window with half a screen of margin on every side.
+     * Program indexes are immutable, so they can be handed to the builder thread as they are.
+     */
+    private void requestSnapshot(long currentTime, float areaWidth, float areaHeight) {
+        // snapshot channels are rows of the current channel view
+        int firstChannel = Math.max(0, (int) ((frScrollY - areaHeight / 2) / channelHeight));
+        int lastChannel = Math.min(channelView.size() - 1,
+                (int) ((frScrollY + areaHeight * 1.5f) / channelHeight));
+        if (firstChannel > lastChannel) return;
+
+        RenderSnapshotBuilder.Request request = new RenderSnapshotBuilder.Request();
+        request.timeScale = timeScale;
+        request.left = frScrollX - areaWidth / 2;
+        request.right = frScrollX + areaWidth * 1.5f;
+        request.firstChannel = firstChannel;
+        request.lastChannel = lastChannel;
+        request.channelCount = channelView.size();
+        request.contentVersion = contentVersion;
+        request.initialTime = initialTimeValue;
+        request.currentTime = currentTime;
+        request.indexes = new ProgramIndex[lastChannel - firstChannel + 1];
+        for (int i = firstChannel; i <= lastChannel; i++) {
+            request.indexes[i - firstChannel] = channelList[channelView.getChannel(i)].getProgramIndex();
+        }
+
+        snapshotRequest = request;
+        snapshotBuilder.request(request);
+    }
+
+    /**
+     * Replay the programs of a snapshot visible on the program area. Horizontal positions are
+     * scaled if the snapshot was built at a different time scale, and texts ellipsized again
+     * for the scaled widths until the snapshot of the new time scale is ready.
+     */
+    private void drawSnapshot(Canvas canvas, RenderSnapshot snapshot) {
+        float scale = timeScale / snapshot.timeScale;
+        float horizontalOffset = frChNameWidth - frScrollX;
+        float verticalOffset = timebarHeight + snapshot.firstChannel * channelHeight - frScrollY;
+        float left = frScrollX;
+        float right = frScrollX + getWidth() - frChNameWidth;
+
+        int firstVisible = Math.max(snapshot.firstChannel, (int) (frScrollY / channelHeight));
+        int lastVisible = Math.min(snapshot.lastChannel,
+                (int) ((frScrollY + getHeight() - timebarHeight) / channelHeight));
+
+        int start = snapshot.channelStarts[firstVisible - snapshot.firstChannel];
+        int end = snapshot.channelStarts[lastVisible - snapshot.firstChannel + 1];
+        float[] rects = snapshot.rects;
+        boolean simpleDetail = timeScale < simpleDetailTimeScale;
+        for (int i = start; i < end; i++) {
+            float programStartX = rects[i * 4] * scale;
+            float programEndX = rects[i * 4 + 2] * scale;
+            if (programEndX < left || programStartX > right) continue;
+
+            boolean highlighted = snapshot.highlighted[i];
+            drawProgramCell(canvas, horizontalOffset + programMargin + programStartX,
+                    verticalOffset + rects[i * 4 + 1],
+                    horizontalOffset - programMargin + programEndX,
+                    verticalOffset + rects[i * 4 + 3],
+                    highlighted, simpleDetail);
+            frameVisiblePrograms++;
+
+            float textWidth = programEndX - programStartX - programMargin * 4;
+            if (textWidth < minTextWidth) continue;
+
+            // texts were ellipsized at the snapshot time scale, ellipsize them again if scaled
+            String text;
+            float textBaseline;
+            if (scale == 1.f) {
+                text = snapshot.texts[i];
+                textBaseline = snapshot.textBaselines[i];
+            } else if (snapshot.names[i] != null) {
+                TextLayoutCache.TextLayout layout = programTextLayouts.get(snapshot.names[i], textWidth);
+                text = layout.text;
+                textBaseline = rects[i * 4 + 1] - programMargin + layout.height
+                        + ((channelHeight - programMargin * 2) - layout.height) / 2;
+            } else {
+                text = null;
+                textBaseline = 0;
+            }
+
+            if (text != null) {
+                paintProgramText.setColor(highlighted ? highlightedProgramTextColor : programTextColor);
+                canvas.drawText(text,
+                        horizontalOffset + programMargin * 2 + programStartX,
+                        verticalOffset + textBaseline,
+                        paintProgramText);
+                frameDrawCalls++;
+            }
+        }
+
+        flushProgramBlock(canvas);
+    }
+
+    /**
+     * Draw the logo and, if expanded, the name of a channel.
+     *
+     * @return false if the channel has a logo but it is not loaded yet
+     */
+    private boolean drawChannelInfo(Canvas canvas, int i, float channelTop) {
+        // draw channel text only when channel is expanded
+        if (!shortChannelMode) {
+            TextLayoutCache.TextLayout layout = channelTextLayouts.get(channelList[i].getName(),
+                    TextLayoutCache.UNBOUNDED);
+
+            canvas.drawText(layout.text,
+                    channelHeight - programMargin * 2,
+                    (channelHeight - layout.height) / 2 + layout.height + channelTop,
+                    paintChannelText);
+            frameDrawCalls++;
+        }
+
+        String iconUrl = channelList[i].getIconUrl();
+        Bitmap icon = iconUrl != null ? logoCache.get(iconUrl) : null;
+        if (icon != null) {
+            // logos keep their aspect ratio, center them on both axes
+            canvas.drawBitmap(icon,
+                    (channelHeight - icon.getWidth()) / 2,
+                    channelTop + (channelHeight - icon.getHeight()) / 2,
+                    null);
+            frameDrawCalls++;
+        }
+
+        return iconUrl == null || icon != null;
+    }
+
+    /**
+     * Draw the programs of a channel overlapping the [left, right] horizontal range. left and
+     * right are program area positions as returned by getTimeHorizontalPosition, they are
+     * translated by horizontalOffset when drawing.
+     *
+     * @return the timestamp when the highlight state of any of the drawn programs changes
+     */
+    private long drawChannelPrograms(Canvas canvas, int channelIndex, float channelTop,
+                                     float horizontalOffset, float left, float right,
+                                     long currentTime) {
+
+        Channel channel = channelList[channelIndex];
+        float channelBottom = channelTop + channelHeight;
+        long nextHighlightChange = Long.MAX_VALUE;
+        int nowIndex = nowPlaying.getNowIndex(channelIndex, currentTime);
+        boolean simpleDetail = timeScale < simpleDetailTimeScale;
+
+        // skip all programs already finished before the left edge
+        ProgramIndex programIndex = channel.getProgramIndex();
+        int first = programIndex.firstEndingAfter(getHorizontalPositionTime(left));
+        for (int j = first; j < programIndex.size(); j++) {
+            long st = programIndex.getStartTime(j);
+            long et = programIndex.getEndTime(j);
+
+            float programStartX = getTimeHorizontalPosition(st);
+            float programEndX = getTimeHorizontalPosition(et);
+
+            // if program start position is bigger than the right edge we can discard
+            // this item and the following programs we will be outside of the screen.
+            if (programStartX > right) break;
+
+            // if program end is before the start of the drawing area, we can skip it.
+            if (programEndX >= left) {
+                // highlight program if it is currently playing
+                boolean highlighted = j == nowIndex;
+                if (highlighted) {
+                    nextHighlightChange = Math.min(nextHighlightChange, et);
+                } else if (st > currentTime) {
+                    nextHighlightChange = Math.min(nextHighlightChange, st);
+                }
+
+                drawProgramCell(canvas, horizontalOffset + programMargin + programStartX,
+                        channelTop + programMargin,
+                        horizontalOffset - programMargin + programEndX,
+                        channelBottom - programMargin,
+                        highlighted, simpleDetail);
+                frameVisiblePrograms++;
+
+                // text is ellipsized to the program width, so there is no need to clip it
+                float textWidth = programEndX - programStartX - programMargin * 4;
+                String programName = textWidth >= minTextWidth ? channel.getProgramName(j) : null;
+                if (programName != null) {
+                    paintProgramText.setColor(highlighted ? highlightedProgramTextColor : programTextColor);
+                    TextLayoutCache.TextLayout layout = programTextLayouts.get(programName, textWidth);
+                    float textPosition = channelTop + layout.height + ((channelHeight - programMargin * 2) - layout.height) / 2;
+                    canvas.drawText(layout.text,
+                            horizontalOffset + programMargin * 2 + programStartX,
+                            textPosition,
+                            paintProgramText);
+                    frameDrawCalls++;
+                }
+            }
+        }
+
+        flushProgramBlock(canvas);
+        return nextHighlightChange;
+    }
+
+    /**
+     * Draw the box of a program. With full detail it is a rounded rect, with simple detail a
+     * plain rect, and consecutive programs narrower than minProgramWidth on the same channel
+     * are merged into a single block. Highlighted programs are never merged.
+     */
+    private void drawProgramCell(Canvas canvas, float left, float top, float right, float bottom,
+                                 boolean highlighted, boolean simpleDetail) {
+        if (!simpleDetail) {
+            paintProgram.setColor(highlighted ? highlightedProgramColor : programColor);
+            canvas.drawRoundRect(left, top, right, bottom, programMargin, programMargin, paintProgram);
+            frameDrawCalls++;
+            return;
+        }
+
+        if (!highlighted && right - left < minProgramWidth) {
+            // the gap between consecutive programs is two margins
+            if (blockPending && top == blockTop && left - blockRight <= programMargin * 2 + 1) {
+                blockRight = right;
+                return;
+            }
+
+            flushProgramBlock(canvas);
+            blockPending = true;
+            blockLeft = left;
+            blockTop = top;
+            blockRight = right;
+            blockBottom = bottom;
+            return;
+        }
+
+        flushProgramBlock(canvas);
+        paintProgramBlock.setColor(highlighted ? highlightedProgramColor : programColor);
+        canvas.drawRect(left, top, right, bottom, paintProgramBlock);
+        frameDrawCalls++;
+    }
+
+    /**
+     * Draw the block of merged programs, if any.
+     */
+    private void flushProgramBlock(Canvas canvas) {
+        if (!blockPending) return;
+
+        paintProgramBlock.setColor(programColor);
+        canvas.drawRect(blockLeft, blockTop, Math.max(blockRight, blockLeft + 1), blockBottom,
+                paintProgramBlock);
+        frameDrawCalls++;
+        blockPending = false;
     }
 
     @Override
@@ -454,21 +1625,56 @@ public class EPG extends View {
     }
 
     private void clickProgram(float x, float y) {
+        if (channelList == null) return;
+
         long ts = getHorizontalPositionTime(scrollXTarget + x - frChNameWidth);
-        int channel = (int) ((y + frScrollY - timebarHeight) / channelHeight);
-
-        ArrayList<Program> programs = channelList[channel].getPrograms();
-        for (int i = 0; i < programs.size(); i++) {
-            Program pr = programs.get(i);
-            if (ts >= pr.getStartTime() && ts < pr.getEndTime()) {
-                if (callback != null) {
-                    callback.programClicked(channelList[channel], pr);
-                }
-                break;
-            }
+        int row = (int) ((y + frScrollY - timebarHeight) / channelHeight);
+        if (row < 0 || row >= channelView.size()) return;
+
+        int channel = channelView.getChannel(row);
+        int programIndex = channelList[channel].getProgramIndex().indexAt(ts);
+        if (programIndex != -1 && callback != null) {
+            Program pr = channelList[channel].getProgram(programIndex);
+            callback.programClicked(channelList[channel], pr);
+        }
+    }
+
+    /**
+     * Request more data when the scroll target gets closer than half a screen to the edge of
+     * the requested window. Requests include one extra screen in each direction.
+     */
+    private void checkDataRequest() {
+        if (dataRequestListener == null) return;
+
+        // channels are requested by position, rows of a filtered or sorted view are mapped back
+        int visibleChannels = (int) ((getHeight() - timebarHeight) / channelHeight) + 1;
+        int lastVisibleRow = (int) (scrollYTarget / channelHeight) + visibleChannels;
+        long visibleTime = (long) (getWidth() / timeScale);
+        long rightEdgeTime = getHorizontalPositionTime(scrollXTarget + getWidth());
+        int prefetchChannel = getRequestChannel(lastVisibleRow + visibleChannels / 2);
+
+        if (prefetchChannel > requestedChannel
+                || rightEdgeTime + visibleTime / 2 > requestedEndTime) {
+
+            requestedChannel = Math.max(requestedChannel,
+                    getRequestChannel(lastVisibleRow + visibleChannels));
+            requestedEndTime = Math.max(requestedEndTime, rightEdgeTime + visibleTime);
+            dataRequestListener.dataRequested(requestedChannel, requestedEndTime);
         }
     }
 
+    /**
+     * Return the channel position to request so all channels up to the given row are loaded.
+     * Rows past the end of the list keep requesting channels beyond the loaded ones.
+     */
+    private int getRequestChannel(int row) {
+        if (channelView == null || channelView.isIdentity()) return row;
+
+        int rowCount = channelView.size();
+        if (row < rowCount) return channelView.getMaxChannel(row);
+        return channelList.length + row - rowCount;
+    }
+
     /**
      * Convert a timestamp into a horizontal position.
      */
@@ -484,6 +1690,41 @@ public class EPG extends View {
         return (long) ((x / timeScale) + initialTimeValue);
     }
 
+    /**
+     * Return the discrete zoom level closest to the current time scale.
+     */
+    private int getZoomLevel() {
+        float defaultTimeScale = DEFAULT_TIME_SCALE * getResources().getDisplayMetrics().density;
+        double octaves = Math.log(timeScale / defaultTimeScale) / Math.log(2);
+        return (int) Math.round(octaves * ZOOM_LEVELS_PER_OCTAVE);
+    }
+
+    /**
+     * Set the time scale to the given discrete zoom level, for instance to benchmark drawing
+     * at different zoom levels. Level 0 is the default time scale.
+     */
+    void setZoomLevel(int zoomLevel) {
+        timeScale = getZoomLevelScale(zoomLevel);
+        if (displayList != null) displayList.invalidate();
+        invalidate();
+    }
+
+    /**
+     * Build the pending snapshot request on the calling thread, for instance to benchmark
+     * drawing snapshots without a builder thread running.
+     */
+    void buildPendingSnapshot() {
+        if (snapshotBuilder != null) snapshotBuilder.buildPending();
+    }
+
+    /**
+     * Return the time scale of a discrete zoom level.
+     */
+    private float getZoomLevelScale(int zoomLevel) {
+        float defaultTimeScale = DEFAULT_TIME_SCALE * getResources().getDisplayMetrics().density;
+        return (float) (defaultTimeScale * Math.pow(2, (double) zoomLevel / ZOOM_LEVELS_PER_OCTAVE));
+    }
+
     /**
      * Check if there is any animation that has not finished.
      */
@@ -491,6 +1732,7 @@ public class EPG extends View {
         if (Math.abs(scrollXTarget - scrollX) > ANIM_THRESHOLD) return true;
         if (Math.abs(scrollYTarget - scrollY) > ANIM_THRESHOLD) return true;
         if (Math.abs(chNameWidthTarget - chNameWidth) > ANIM_THRESHOLD) return true;
+        if (animator.hasPendingAnimations()) return true;
 
         return false;
     }
@@ -507,6 +1749,7 @@ public class EPG extends View {
             scrollX += (scrollXTarget - scrollX) / 4.f;
             scrollY += (scrollYTarget - scrollY) / 4.f;
             chNameWidth += (chNameWidthTarget - chNameWidth) / 4.f;
+            animator.logicTick();
             accTime -= TIME_THRESHOLD;
         }
 
@@ -518,6 +1761,12 @@ public class EPG extends View {
         frScrollX = scrollX * (1.f - factor) + nextScrollX * factor;
         frScrollY = scrollY * (1.f - factor) + nextScrollY * factor;
         frChNameWidth = chNameWidth * (1.f - factor) + nextChNameWidth * factor;
+
+        frViewTransition = animator.getInterpolated(viewTransition, factor);
+        frRestoreFade = animator.getInterpolated(restoreFade, factor);
+        if (previousChannelView != null && !animator.isAnimating(viewTransition)) {
+            previousChannelView = null;
+        }
     }
 
     /**
@@ -528,39 +1777,97 @@ public class EPG extends View {
         scrollYTarget += dy;
 
         if (scrollXTarget < -chNameWidth) scrollXTarget = -chNameWidth;
-        if (scrollYTarget < 0) scrollYTarget = 0;
 
-        float maxHeight = channelList.length * channelHeight - getHeight() + 1 + timebarHeight;
+        // a view with less rows than fit on screen cannot be scrolled at all
+        int rowCount = channelView != null ? channelView.size() : 0;
+        float maxHeight = rowCount * channelHeight - getHeight() + 1 + timebarHeight;
         if (scrollYTarget > maxHeight) scrollYTarget = maxHeight;
+        if (scrollYTarget < 0) scrollYTarget = 0;
 
         invalidate();
     }
 
 
-    /**
-     * Picaso callback for image loading
-     */
-    class ChannelIconTarget implements Target {
-        private Channel ch;
+    interface EPGCallback {
+        void programClicked(Channel channel, Program program);
+    }
+
+    interface DataRequestListener {
+        void dataRequested(int lastChannel, long endTime);
+    }
+
+    interface ScheduleListener {
+        void programAdded(int channel, Program program);
 
-        ChannelIconTarget(Channel ch) {
-            this.ch = ch;
+        /**
+         * The program starting at startTime has been replaced. The new program might start
+         * at a different time.
+         */
+        void programUpdated(int channel, long startTime, Program program);
+
+        void programRemoved(int channel, long startTime);
+    }
+
+    static class SavedState extends BaseSavedState {
+        // time at the horizontal scroll position, positions depend on when the view is created
+        private long scrollTime;
+        private float scrollY;
+        private float timeScale;
+        private boolean shortChannelMode;
+
+        // size of the view when the last frame was saved, 0 if there is none
+        private int frameWidth;
+        private int frameHeight;
+
+        SavedState(Parcelable superState) {
+            super(superState);
         }
 
-        @Override
-        public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom from) {
-            ch.setIcon(bitmap);
-            invalidate();
+        private SavedState(Parcel in) {
+            super(in);
+            scrollTime = in.readLong();
+            scrollY = in.readFloat();
+            timeScale = in.readFloat();
+            shortChannelMode = in.readInt() != 0;
+            frameWidth = in.readInt();
+            frameHeight = in.readInt();
         }
 
         @Override
-        public void onBitmapFailed(Drawable errorDrawable) {}
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeLong(scrollTime);
+            out.writeFloat(scrollY);
+            out.writeFloat(timeScale);
+            out.writeInt(shortChannelMode ? 1 : 0);
+            out.writeInt(frameWidth);
+            out.writeInt(frameHeight);
+        }
 
-        @Override
-        public void onPrepareLoad(Drawable placeHolderDrawable) {}
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
     }
 
-    interface EPGCallback {
-        void programClicked(Channel channel, Program program);
+    interface ChannelFilter {
+        boolean accept(Channel channel);
+    }
+
+    interface ShardLoader {
+        /**
+         * Load the programs of all channels starting in [startTime, endTime) and call
+         * notifyShardLoaded(startTime) once they have been added to the channel list. Shards
+         * not notified within 30 seconds are requested again, programs already added for
+         * them should not be added twice.
+         */
+        void loadShard(long startTime, long endTime);
     }
 }
@@ -0,0 +1,90 @@
+package com.rrafols.packt.epg;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Icon fetcher decoding icons from a local directory instead of the network. The last path
+ * segment of the url is used as file name. Intended to test the icon loading without
+ * depending on an icon server.
+ */
+public class FileIconFetcher implements IconFetcher {
+    private final File directory;
+    private final ExecutorService executor;
+    private final Handler handler;
+    private final HashMap<String, Future<?>> pending;
+
+    public FileIconFetcher(File directory) {
+        this.directory = directory;
+
+        executor = Executors.newSingleThreadExecutor();
+        handler = new Handler(Looper.getMainLooper());
+        pending = new HashMap<>();
+    }
+
+    @Override
+    public void fetch(final String url, final int targetSize, final Callback callback) {
+        Future<?> future = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                String fileName = url.substring(url.lastIndexOf('/') + 1);
+                File file = new File(directory, fileName);
+                final Bitmap bitmap = file.isFile() ? decode(file.getPath(), targetSize) : null;
+
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // ignore the result if the request has been cancelled meanwhile
+                        if (pending.remove(url) == null) return;
+
+                        if (bitmap != null) {
+                            callback.onIconLoaded(url, bitmap);
+                        } else {
+                            callback.onIconFailed(url);
+                        }
+                    }
+                });
+            }
+        });
+
+        pending.put(url, future);
+    }
+
+    @Override
+    public void cancel(String url) {
+        Future<?> future = pending.remove(url);
+        if (future != null) future.cancel(false);
+    }
+
+    /**
+     * Decode an image subsampled by the biggest power of two keeping it over targetSize.
+     */
+    private static Bitmap decode(String path, int targetSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= targetSize
+                && options.outHeight / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeFile(path, options);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,215 @@
+package com.rrafols.packt.epg;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Per-phase frame timing of the EPG view. Durations are recorded into fixed size
+ * log-linear histograms, so recording a frame does not allocate any memory. Percentiles
+ * are approximated to the lower bound of their histogram bucket, 12.5% precision.
+ */
+public class FrameStats {
+    private static final String TAG = FrameStats.class.getName();
+
+    public static final int PHASE_ANIMATE = 0;
+    public static final int PHASE_BACKGROUND = 1;
+    public static final int PHASE_BODY = 2;
+    public static final int PHASE_TIME_BAR = 3;
+    public static final int PHASE_CURRENT_TIME = 4;
+    public static final int PHASE_FRAME = 5;
+
+    // draw calls and visible programs are recorded like phases, but are counts not times
+    static final int DRAW_CALLS = 6;
+    static final int VISIBLE_PROGRAMS = 7;
+
+    private static final String[] NAMES = {
+            "animate", "background", "body", "timeBar", "currentTime", "frame",
+            "drawCalls", "visiblePrograms"
+    };
+
+    // values below 2^SUB_BUCKET_BITS are exact, above that every power of two is split
+    // into 2^SUB_BUCKET_BITS buckets
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (40 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[][] histograms;
+    private final long[] max;
+    private final long dumpInterval;
+
+    private boolean enabled;
+    private long frames;
+    private long frameStart;
+    private long phaseStart;
+    private long lastDump;
+
+    FrameStats(long dumpInterval) {
+        this.dumpInterval = dumpInterval;
+
+        histograms = new long[NAMES.length][BUCKETS];
+        max = new long[NAMES.length];
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        lastDump = SystemClock.elapsedRealtime();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    void beginFrame() {
+        if (!enabled) return;
+
+        frameStart = System.nanoTime();
+        phaseStart = frameStart;
+    }
+
+    /**
+     * Record the time elapsed since the previous phase ended, or since the frame began.
+     */
+    void endPhase(int phase) {
+        if (!enabled) return;
+
+        long now = System.nanoTime();
+        record(phase, (now - phaseStart) / 1000);
+        phaseStart = now;
+    }
+
+    void endFrame(int drawCalls, int visiblePrograms) {
+        if (!enabled) return;
+
+        record(PHASE_FRAME, (System.nanoTime() - frameStart) / 1000);
+        record(DRAW_CALLS, drawCalls);
+        record(VISIBLE_PROGRAMS, visiblePrograms);
+        frames++;
+
+        if (dumpInterval > 0 && SystemClock.elapsedRealtime() - lastDump >= dumpInterval) {
+            lastDump = SystemClock.elapsedRealtime();
+            Log.d(TAG, snapshot().toString());
+        }
+    }
+
+    public void reset() {
+        for (long[] histogram : histograms) {
+            Arrays.fill(histogram, 0);
+        }
+        Arrays.fill(max, 0);
+        frames = 0;
+    }
+
+    /**
+     * Return a copy of the current statistics. Times are in microseconds.
+     */
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot(frames);
+        for (int i = 0; i < NAMES.length; i++) {
+            snapshot.p50[i] = percentile(histograms[i], 0.50);
+            snapshot.p95[i] = percentile(histograms[i], 0.95);
+            snapshot.p99[i] = percentile(histograms[i], 0.99);
+            snapshot.max[i] = max[i];
+        }
+        return snapshot;
+    }
+
+    private void record(int index, long value) {
+        if (value < 0) value = 0;
+
+        histograms[index][bucket(value)]++;
+        if (value > max[index]) max[index] = value;
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket);
+    }
+
+    static long bucketLowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        return (1L << exponent) + ((long) subBucket << (exponent - SUB_BUCKET_BITS));
+    }
+
+    private static long percentile(long[] histogram, double percentile) {
+        long total = 0;
+        for (long count : histogram) total += count;
+        if (total == 0) return 0;
+
+        long target = (long) Math.ceil(total * percentile);
+        long accumulated = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            accumulated += histogram[i];
+            if (accumulated >= target) return bucketLowerBound(i);
+        }
+
+        return bucketLowerBound(histogram.length - 1);
+    }
+
+    public static class Snapshot {
+        private final long frames;
+        private final long[] p50 = new long[NAMES.length];
+        private final long[] p95 = new long[NAMES.length];
+        private final long[] p99 = new long[NAMES.length];
+        private final long[] max = new long[NAMES.length];
+
+        Snapshot(long frames) {
+            this.frames = frames;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        public long getP50(int phase) {
+            return p50[phase];
+        }
+
+        public long getP95(int phase) {
+            return p95[phase];
+        }
+
+        public long getP99(int phase) {
+            return p99[phase];
+        }
+
+        public long getMax(int phase) {
+            return max[phase];
+        }
+
+        public long getDrawCallsP50() {
+            return p50[DRAW_CALLS];
+        }
+
+        public long getDrawCallsMax() {
+            return max[DRAW_CALLS];
+        }
+
+        public long getVisibleProgramsP50() {
+            return p50[VISIBLE_PROGRAMS];
+        }
+
+        public long getVisibleProgramsMax() {
+            return max[VISIBLE_PROGRAMS];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("frames: ").append(frames);
+            for (int i = 0; i < NAMES.length; i++) {
+                sb.append(String.format(Locale.US, "\n%-16s p50 %6d p95 %6d p99 %6d max %6d",
+                        NAMES[i], p50[i], p95[i], p99[i], max[i]));
+            }
+            return sb.toString();
+        }
+    }
+}
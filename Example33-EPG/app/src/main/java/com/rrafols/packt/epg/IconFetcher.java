@@ -0,0 +1,25 @@
+package com.rrafols.packt.epg;
+
+import android.graphics.Bitmap;
+
+/**
+ * Source of channel icons. Implementations must deliver callbacks on the main thread.
+ */
+public interface IconFetcher {
+    interface Callback {
+        void onIconLoaded(String url, Bitmap bitmap);
+
+        void onIconFailed(String url);
+    }
+
+    /**
+     * Start loading the icon at the given url. Only one request per url is issued at a time.
+     * Implementations should avoid decoding icons much bigger than targetSize pixels.
+     */
+    void fetch(String url, int targetSize, Callback callback);
+
+    /**
+     * Cancel a pending request, the callback will not be invoked for it.
+     */
+    void cancel(String url);
+}
@@ -0,0 +1,118 @@
+package com.rrafols.packt.epg;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps the last frame drawn by a view to show it while the view is being recreated. The
+ * latest frame is kept in memory, so a configuration change gets it back without decoding
+ * anything, and written to the cache directory in the background to survive the process
+ * being killed. Writes and decodes run one after the other on a single background thread, so
+ * a frame is never read while being written or written by two saves at once.
+ */
+class LastFrameStore {
+    private static final String TAG = LastFrameStore.class.getName();
+
+    interface Callback {
+        /**
+         * Called on the main thread with the frame loaded, or null if there is none.
+         */
+        void onFrameLoaded(Bitmap frame);
+    }
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "LastFrameStore");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+
+    private static final Object lock = new Object();
+    private static File lastFile;
+    private static Bitmap lastFrame;
+
+    private LastFrameStore() {
+    }
+
+    /**
+     * Keep the frame and write it to the given file. The frame must not be modified anymore.
+     */
+    static void save(final Bitmap frame, final File file) {
+        synchronized (lock) {
+            lastFile = file;
+            lastFrame = frame;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(frame, file);
+                } catch (IOException e) {
+                    Log.w(TAG, "cannot write last frame", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Load the frame saved to the given file. The frame kept in memory is delivered right
+     * away, otherwise the file is decoded in the background once pending writes are done.
+     */
+    static void load(final File file, final Callback callback) {
+        Bitmap frame = null;
+        synchronized (lock) {
+            if (file.equals(lastFile)) frame = lastFrame;
+        }
+
+        if (frame != null) {
+            callback.onFrameLoaded(frame);
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap frame = file.exists() ? BitmapFactory.decodeFile(file.getPath()) : null;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onFrameLoaded(frame);
+                    }
+                });
+            }
+        });
+    }
+
+    private static void write(Bitmap frame, File file) throws IOException {
+        // the process might be killed while writing, replace the file once complete
+        File temporary = new File(file.getPath() + ".tmp");
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(temporary));
+        try {
+            frame.compress(Bitmap.CompressFormat.PNG, 100, output);
+        } finally {
+            output.close();
+        }
+
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("cannot replace " + file);
+        }
+    }
+}
@@ -1,37 +1,343 @@
 package com.rrafols.packt.epg;
 
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.ViewTreeObserver;
 
 import com.rrafols.packt.epg.data.Channel;
+import com.rrafols.packt.epg.data.ColumnarChannel;
+import com.rrafols.packt.epg.data.GuideSnapshot;
 import com.rrafols.packt.epg.data.Program;
+import com.rrafols.packt.epg.data.ProgramIndex;
+import com.rrafols.packt.epg.data.ProgramSearchIndex;
+import com.rrafols.packt.epg.data.StringTable;
+import com.rrafols.packt.epg.data.XmltvLoader;
+import com.rrafols.packt.epg.util.TimeTextFormatter;
 import com.squareup.picasso.Picasso;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Random;
+import java.util.TimeZone;
 
 public class MainActivity extends AppCompatActivity {
+    // store schedules in primitive arrays instead of one object per program
+    private static final boolean COLUMNAR_PROGRAM_STORE = true;
+
+    // load the guide from the XMLTV fixture in the assets instead of generating it
+    private static final boolean LOAD_XMLTV_FIXTURE = false;
+    private static final String XMLTV_FIXTURE = "guide.xml";
+
+    // first program of the fixture starts at 2017-10-18 00:00:00 UTC
+    private static final long XMLTV_FIXTURE_START = 1508284800000L;
+
+    // keep a binary snapshot of the loaded guide and show it on the next launch
+    private static final boolean USE_GUIDE_SNAPSHOT = true;
+    private static final String GUIDE_SNAPSHOT = "guide.snapshot";
+    private static final long GUIDE_SNAPSHOT_MAX_AGE = 6 * 60 * 60 * 1000;
+
+    private XmltvLoader xmltvLoader;
+    private ProgramSearchIndex searchIndex;
+    private ProgramSearchIndex refreshSearchIndex;
+    private EPG epg;
+    private BroadcastReceiver timeZoneReceiver;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        EPG epg = (EPG) findViewById(R.id.epg_view);
+        epg = (EPG) findViewById(R.id.epg_view);
         epg.setCallback(new EPG.EPGCallback() {
             @Override
             public void programClicked(Channel channel, Program program) {
                 Log.d("EPG", "program clicked: " + program.getName() + " channel: " + channel.getName());
+
+                // clicking a program again cancels its reminder
+                boolean reminded = ReminderScheduler.getInstance().toggleReminder(channel, program);
+                Log.d("EPG", "reminder " + (reminded ? "set" : "not set") + " for " + program.getName());
+            }
+        });
+
+        searchIndex = new ProgramSearchIndex();
+        epg.setScheduleListener(new EPG.ScheduleListener() {
+            @Override
+            public void programAdded(int channel, Program program) {
+                searchIndex.add(channel, program.getName(), program.getDescription(),
+                        program.getStartTime());
+            }
+
+            @Override
+            public void programUpdated(int channel, long startTime, Program program) {
+                // stale search entries are filtered out against the channel when searching
+                searchIndex.add(channel, program.getName(), program.getDescription(),
+                        program.getStartTime());
+                ReminderScheduler.getInstance().programUpdated(channel, startTime, program);
+            }
+
+            @Override
+            public void programRemoved(int channel, long startTime) {
+                ReminderScheduler.getInstance().programRemoved(channel, startTime);
+            }
+        });
+
+        if (LOAD_XMLTV_FIXTURE) {
+            if (!USE_GUIDE_SNAPSHOT || !loadGuideSnapshot(epg)) loadXmltvFixture(epg, false);
+        } else {
+            populateDummyChannelList(epg, searchIndex);
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+
+        // the zone might have changed while stopped, times are formatted in the default one
+        updateTimeZone();
+        timeZoneReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                updateTimeZone();
+            }
+        };
+        registerReceiver(timeZoneReceiver, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        unregisterReceiver(timeZoneReceiver);
+        timeZoneReceiver = null;
+    }
+
+    private void updateTimeZone() {
+        TimeTextFormatter formatter = TimeTextFormatter.getInstance();
+        TimeZone timeZone = TimeZone.getDefault();
+        if (!timeZone.getID().equals(formatter.getTimeZone().getID())) {
+            formatter.setTimeZone(timeZone);
+            epg.invalidate();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (xmltvLoader != null) xmltvLoader.cancel();
+        searchIndex.shutdown();
+        if (refreshSearchIndex != null) refreshSearchIndex.shutdown();
+    }
+
+    private void setChannels(EPG epg, Channel[] channels) {
+        ReminderScheduler.getInstance().setChannels(channels);
+        epg.setChannelList(channels);
+    }
+
+    /**
+     * Show the guide snapshot written on a previous launch, if there is a recent enough one.
+     * Programs of each channel are decoded when the channel is drawn for the first time, the
+     * search index is filled in the background and the guide is loaded again once the first
+     * frame has been drawn.
+     */
+    private boolean loadGuideSnapshot(final EPG epg) {
+        final File file = new File(getCacheDir(), GUIDE_SNAPSHOT);
+        if (!file.exists()) return false;
+
+        try {
+            long start = System.nanoTime();
+            GuideSnapshot snapshot = GuideSnapshot.open(file);
+            if (System.currentTimeMillis() - snapshot.getCreatedTime() > GUIDE_SNAPSHOT_MAX_AGE) {
+                return false;
+            }
+
+            snapshot.setListener(new GuideSnapshot.Listener() {
+                @Override
+                public void onSnapshotCorrupted(GuideSnapshot snapshot, IOException e) {
+                    Log.w("EPG", "dropping corrupt guide snapshot", e);
+                    file.delete();
+
+                    // reported while drawing, load the guide again once the frame is done
+                    epg.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (xmltvLoader == null) loadXmltvFixture(epg, false);
+                        }
+                    });
+                }
+            });
+
+            setChannels(epg, snapshot.getChannels());
+            Log.d("EPG", "guide snapshot opened in " + (System.nanoTime() - start) / 1000 + " us");
+
+            indexGuideSnapshot(snapshot);
+            refreshAfterFirstFrame(epg);
+            return true;
+        } catch (IOException e) {
+            Log.w("EPG", "cannot open guide snapshot", e);
+            return false;
+        }
+    }
+
+    private void indexGuideSnapshot(final GuideSnapshot snapshot) {
+        final ProgramSearchIndex searchIndex = this.searchIndex;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    snapshot.addToSearchIndex(searchIndex);
+                } catch (IOException e) {
+                    // the channel failing to decode drops the snapshot when it is drawn
+                    Log.w("EPG", "cannot index guide snapshot", e);
+                }
+            }
+        }, "GuideSnapshotIndexer");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Load the guide again in the background, without competing with the first frame, so a
+     * snapshot does not keep being shown until it gets too old.
+     */
+    private void refreshAfterFirstFrame(final EPG epg) {
+        epg.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                epg.getViewTreeObserver().removeOnPreDrawListener(this);
+
+                // posted, so it runs after the frame being drawn
+                epg.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (xmltvLoader == null) loadXmltvFixture(epg, true);
+                    }
+                });
+                return true;
             }
         });
+    }
+
+    /**
+     * Write a guide snapshot in the background. Channels keep changing on the UI thread, with
+     * schedule deltas, evictions or just their indices being built lazily, so only immutable
+     * program indices captured here are handed to the writer.
+     */
+    private void writeGuideSnapshot(Channel[] channels) {
+        final String[] names = new String[channels.length];
+        final String[] iconUrls = new String[channels.length];
+        final ProgramIndex[] schedules = new ProgramIndex[channels.length];
+        final String[][] descriptions = new String[channels.length][];
+        for (int i = 0; i < channels.length; i++) {
+            names[i] = channels[i].getName();
+            iconUrls[i] = channels[i].getIconUrl();
+            schedules[i] = channels[i].getProgramIndex();
+
+            descriptions[i] = new String[schedules[i].size()];
+            for (int j = 0; j < descriptions[i].length; j++) {
+                descriptions[i][j] = channels[i].getProgramDescription(j);
+            }
+        }
+
+        final File file = new File(getCacheDir(), GUIDE_SNAPSHOT);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    GuideSnapshot.write(names, iconUrls, schedules, descriptions, file);
+                } catch (IOException e) {
+                    Log.w("EPG", "cannot write guide snapshot", e);
+                }
+            }
+        }, "GuideSnapshotWriter");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Load the XMLTV fixture. Channels are shown as soon as they are declared and loaded as
+     * they are scrolled into view, unless it is refreshing the guide shown. In that case it
+     * is loaded completely into new channels and a new search index, which replace the ones
+     * shown once done.
+     */
+    private void loadXmltvFixture(final EPG epg, final boolean refresh) {
+        final ProgramSearchIndex loaderSearchIndex;
+        if (refresh) {
+            refreshSearchIndex = new ProgramSearchIndex();
+            loaderSearchIndex = refreshSearchIndex;
+        } else {
+            loaderSearchIndex = searchIndex;
+        }
+
+        try {
+            xmltvLoader = new XmltvLoader(getAssets().open(XMLTV_FIXTURE), new XmltvLoader.Listener() {
+                private Channel[] channels;
+
+                @Override
+                public void onChannelsLoaded(Channel[] channels) {
+                    this.channels = channels;
+                    if (!refresh) setChannels(epg, channels);
+                }
+
+                @Override
+                public void onWindowLoaded(int firstChannel, int lastChannel, long startTime, long endTime) {
+                    if (!refresh) epg.notifyProgramsChanged(firstChannel, lastChannel);
+                }
+
+                @Override
+                public void onLoadFinished() {
+                    Log.d("EPG", "XMLTV guide fully loaded");
+                    if (refresh) {
+                        searchIndex.shutdown();
+                        searchIndex = refreshSearchIndex;
+                        refreshSearchIndex = null;
+                        setChannels(epg, channels);
+                    }
+
+                    // all programs have been added, snapshot the guide as it is now
+                    if (USE_GUIDE_SNAPSHOT) writeGuideSnapshot(channels);
+                }
+
+                @Override
+                public void onLoadFailed(Exception e) {
+                    Log.e("EPG", "error loading XMLTV guide", e);
+                }
+            });
+        } catch (IOException e) {
+            Log.e("EPG", "cannot open XMLTV fixture", e);
+            return;
+        }
+
+        // move the fixture so it starts two hours before the current time
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.HOUR, -2);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        xmltvLoader.setTimeShift(calendar.getTimeInMillis() - XMLTV_FIXTURE_START);
+        xmltvLoader.setSearchIndex(loaderSearchIndex);
 
-        populateDummyChannelList(epg);
+        if (refresh) {
+            xmltvLoader.requestWindow(Integer.MAX_VALUE, Long.MAX_VALUE);
+        } else {
+            epg.setDataRequestListener(new EPG.DataRequestListener() {
+                @Override
+                public void dataRequested(int lastChannel, long endTime) {
+                    xmltvLoader.requestWindow(lastChannel, endTime);
+                }
+            });
+        }
+        xmltvLoader.start();
     }
 
-    private static void populateDummyChannelList(EPG epg) {
+    private void populateDummyChannelList(EPG epg, ProgramSearchIndex searchIndex) {
         Channel[] channelList = new Channel[20];
+        StringTable stringTable = new StringTable();
         for (int i = 0; i < channelList.length; i++) {
             String iconURL = "https://raw.githubusercontent.com/googlei18n/noto-emoji/master/png/128/emoji_u1f3";
 
@@ -41,7 +347,11 @@ public class MainActivity extends AppCompatActivity {
                 iconURL += i;
             }
             iconURL += ".png";
-            channelList[i] = new Channel("channel " + i, iconURL);
+            if (COLUMNAR_PROGRAM_STORE) {
+                channelList[i] = new ColumnarChannel("channel " + i, iconURL, stringTable);
+            } else {
+                channelList[i] = new Channel("channel " + i, iconURL);
+            }
 
             Random rnd = new Random();
 //            long time = System.currentTimeMillis(); // - 2 * 60 * 60 * 1000;
@@ -65,6 +375,16 @@ public class MainActivity extends AppCompatActivity {
             }
         }
 
-        epg.setChannelList(channelList);
+        long memoryUsage = COLUMNAR_PROGRAM_STORE ? stringTable.estimateMemoryUsage() : 0;
+        for (Channel channel : channelList) {
+            memoryUsage += channel.estimateMemoryUsage();
+        }
+        Log.d("EPG", "estimated schedule memory usage: " + memoryUsage + " bytes");
+
+        for (int i = 0; i < channelList.length; i++) {
+            searchIndex.addChannel(i, channelList[i]);
+        }
+
+        setChannels(epg, channelList);
     }
 }
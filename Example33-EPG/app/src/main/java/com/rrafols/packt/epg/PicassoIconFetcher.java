@@ -0,0 +1,74 @@
+package com.rrafols.packt.epg;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Target;
+
+import java.util.HashMap;
+
+/**
+ * Icon fetcher loading icons from the network with Picasso.
+ */
+public class PicassoIconFetcher implements IconFetcher {
+    private final Context context;
+
+    // Picasso only keeps weak references to targets, keep them while requests are pending
+    private final HashMap<String, IconTarget> targets;
+
+    public PicassoIconFetcher(Context context) {
+        this.context = context.getApplicationContext();
+        targets = new HashMap<>();
+    }
+
+    @Override
+    public void fetch(String url, int targetSize, Callback callback) {
+        IconTarget target = new IconTarget(url, callback);
+        targets.put(url, target);
+
+        Picasso.with(context)
+                .load(url)
+                .resize(targetSize, targetSize)
+                .centerInside()
+                .onlyScaleDown()
+                .into(target);
+    }
+
+    @Override
+    public void cancel(String url) {
+        IconTarget target = targets.remove(url);
+        if (target != null) {
+            Picasso.with(context).cancelRequest(target);
+        }
+    }
+
+    /**
+     * Picasso callback for image loading
+     */
+    private class IconTarget implements Target {
+        private final String url;
+        private final Callback callback;
+
+        IconTarget(String url, Callback callback) {
+            this.url = url;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom from) {
+            targets.remove(url);
+            callback.onIconLoaded(url, bitmap);
+        }
+
+        @Override
+        public void onBitmapFailed(Drawable errorDrawable) {
+            targets.remove(url);
+            callback.onIconFailed(url);
+        }
+
+        @Override
+        public void onPrepareLoad(Drawable placeHolderDrawable) {}
+    }
+}
@@ -0,0 +1,19 @@
+package com.rrafols.packt.epg;
+
+import android.graphics.Canvas;
+
+/**
+ * Renders a block of the program area into an offscreen canvas, used by the cached
+ * rendering modes.
+ */
+interface ProgramAreaRenderer {
+    /**
+     * Render the programs of channels firstChannel to lastChannel, both included, in the
+     * [left, right] horizontal range. Channels are rows of the channel view being shown.
+     * Canvas origin is the top-left corner of the block.
+     *
+     * @return the timestamp when the block has to be rendered again
+     */
+    long render(Canvas canvas, int firstChannel, int lastChannel,
+                float left, float right, long currentTime);
+}
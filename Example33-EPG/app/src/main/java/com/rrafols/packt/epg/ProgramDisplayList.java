@@ -0,0 +1,97 @@
+package com.rrafols.packt.epg;
+
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.os.Build;
+
+/**
+ * Display list of the program area. The visible window plus half a screen on every side is
+ * recorded into a Picture and replayed with a translation while the scroll position stays
+ * inside the recorded area. It is recorded again when the window slides out of it, the zoom
+ * or the content changes, or the highlight of any recorded program changes.
+ */
+class ProgramDisplayList {
+    private final Picture picture;
+    private final float channelHeight;
+
+    private boolean valid;
+    private float recordedTimeScale;
+    private float left;
+    private float right;
+    private int firstChannel;
+    private int lastChannel;
+    private long validUntil;
+    private int recordCount;
+
+    ProgramDisplayList(float channelHeight) {
+        this.channelHeight = channelHeight;
+        picture = new Picture();
+    }
+
+    /**
+     * Pictures can only be drawn on hardware accelerated canvases from Android M.
+     */
+    static boolean isSupported(Canvas canvas) {
+        return !canvas.isHardwareAccelerated() || Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+    }
+
+    /**
+     * Draw the program area, recording it again if required. scrollX and scrollY are the
+     * program area positions shown at the (areaLeft, areaTop) screen position.
+     */
+    void draw(Canvas canvas, ProgramAreaRenderer renderer, float timeScale,
+              float scrollX, float scrollY, float areaLeft, float areaTop,
+              int width, int height, int channelCount, long currentTime) {
+
+        float areaWidth = width - areaLeft;
+        float areaHeight = height - areaTop;
+        int firstVisible = (int) (scrollY / channelHeight);
+        int lastVisible = Math.min((int) ((scrollY + areaHeight) / channelHeight), channelCount - 1);
+        if (lastVisible < firstVisible) return;
+
+        if (!valid
+                || timeScale != recordedTimeScale
+                || currentTime >= validUntil
+                || scrollX < left
+                || scrollX + areaWidth > right
+                || firstVisible < firstChannel
+                || lastVisible > lastChannel) {
+
+            int marginChannels = (lastVisible - firstVisible) / 2 + 1;
+            left = scrollX - areaWidth / 2;
+            right = scrollX + areaWidth * 1.5f;
+            firstChannel = Math.max(0, firstVisible - marginChannels);
+            lastChannel = Math.min(channelCount - 1, lastVisible + marginChannels);
+            recordedTimeScale = timeScale;
+
+            Canvas recordingCanvas = picture.beginRecording((int) Math.ceil(right - left),
+                    (int) Math.ceil((lastChannel - firstChannel + 1) * channelHeight));
+            validUntil = renderer.render(recordingCanvas, firstChannel, lastChannel,
+                    left, right, currentTime);
+            picture.endRecording();
+
+            valid = true;
+            recordCount++;
+        }
+
+        canvas.save();
+        canvas.translate(areaLeft + left - scrollX, areaTop + firstChannel * channelHeight - scrollY);
+        canvas.drawPicture(picture);
+        canvas.restore();
+    }
+
+    /**
+     * Force recording again on the next frame, for instance when the content changes.
+     */
+    void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Number of times the display list has been recorded, useful to check how often it can
+     * be replayed.
+     */
+    int getRecordCount() {
+        return recordCount;
+    }
+}
@@ -0,0 +1,184 @@
+package com.rrafols.packt.epg;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.rrafols.packt.epg.data.Channel;
+import com.rrafols.packt.epg.data.Program;
+import com.rrafols.packt.epg.data.ProgramReminders;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Reminders of the programs clicked on the guide. Owned by the process instead of an
+ * activity, so reminders survive the activity being recreated, and driven by a handler on
+ * the main looper waking up only when the next reminder is due.
+ *
+ * There is at most one reminder per program, identified by its channel position and start
+ * time. Requesting it again cancels it. Meant to be used from the main thread.
+ */
+class ReminderScheduler {
+    private static final String TAG = "EPG";
+
+    // remind programs a minute before they start
+    private static final long LEAD_TIME = 60 * 1000;
+    private static final long RESOLUTION = 1000;
+    private static final int MAX_REMINDERS = 100000;
+
+    private static ReminderScheduler instance;
+
+    private static class Key {
+        private final int channel;
+        private final long startTime;
+
+        Key(int channel, long startTime) {
+            this.channel = channel;
+            this.startTime = startTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+            return channel == key.channel && startTime == key.startTime;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * channel + (int) (startTime ^ (startTime >>> 32));
+        }
+    }
+
+    private final ProgramReminders reminders;
+    private final HashMap<Key, Integer> handles;
+    private final IdentityHashMap<Channel, Integer> channelPositions;
+    private final Handler handler;
+    private final Runnable tick;
+    private Channel[] channels;
+
+    static ReminderScheduler getInstance() {
+        if (instance == null) {
+            instance = new ReminderScheduler();
+        }
+
+        return instance;
+    }
+
+    ReminderScheduler() {
+        handles = new HashMap<>();
+        channelPositions = new IdentityHashMap<>();
+        handler = new Handler(Looper.getMainLooper());
+        reminders = new ProgramReminders(ProgramReminders.SYSTEM_CLOCK, RESOLUTION, MAX_REMINDERS,
+                new ProgramReminders.Listener() {
+            @Override
+            public void onProgramEvent(int type, int channel, long startTime, long eventTime) {
+                handles.remove(new Key(channel, startTime));
+                onReminder(channel, startTime);
+            }
+        });
+        tick = new Runnable() {
+            @Override
+            public void run() {
+                reminders.advance();
+                scheduleTick();
+            }
+        };
+    }
+
+    /**
+     * Set the channels reminders refer to. Reminders are kept, a guide loaded again has the
+     * same channels, and reminders of programs no longer there are ignored when due.
+     */
+    void setChannels(Channel[] channels) {
+        this.channels = channels;
+
+        channelPositions.clear();
+        for (int i = 0; i < channels.length; i++) {
+            channelPositions.put(channels[i], i);
+        }
+    }
+
+    /**
+     * Schedule a reminder before the program starts or cancel the one already scheduled.
+     *
+     * @return true if a reminder is scheduled now
+     */
+    boolean toggleReminder(Channel channel, Program program) {
+        Integer position = channelPositions.get(channel);
+        if (position == null) return false;
+
+        Key key = new Key(position, program.getStartTime());
+        Integer handle = handles.remove(key);
+        if (handle != null) {
+            reminders.cancel(handle);
+            scheduleTick();
+            return false;
+        }
+
+        if (program.getStartTime() <= System.currentTimeMillis()) return false;
+
+        int newHandle = reminders.schedule(ProgramReminders.EVENT_START, position,
+                program.getStartTime(), program.getStartTime() - LEAD_TIME);
+        if (newHandle == -1) return false;
+
+        handles.put(key, newHandle);
+        scheduleTick();
+        return true;
+    }
+
+    /**
+     * Move the reminder of a program changed in the schedule to its new start time, or
+     * cancel it if the program has already started.
+     */
+    void programUpdated(int channel, long startTime, Program program) {
+        Integer handle = handles.remove(new Key(channel, startTime));
+        if (handle == null) return;
+
+        reminders.cancel(handle);
+        if (program.getStartTime() > System.currentTimeMillis()) {
+            int newHandle = reminders.schedule(ProgramReminders.EVENT_START, channel,
+                    program.getStartTime(), program.getStartTime() - LEAD_TIME);
+            if (newHandle != -1) handles.put(new Key(channel, program.getStartTime()), newHandle);
+        }
+        scheduleTick();
+    }
+
+    /**
+     * Cancel the reminder of a program removed from the schedule.
+     */
+    void programRemoved(int channel, long startTime) {
+        Integer handle = handles.remove(new Key(channel, startTime));
+        if (handle == null) return;
+
+        reminders.cancel(handle);
+        scheduleTick();
+    }
+
+    boolean hasReminder(Channel channel, Program program) {
+        Integer position = channelPositions.get(channel);
+        return position != null && handles.containsKey(new Key(position, program.getStartTime()));
+    }
+
+    private void onReminder(int channel, long startTime) {
+        if (channels == null || channel >= channels.length) return;
+
+        int index = channels[channel].getProgramIndex().indexOfStartTime(startTime);
+        if (index == -1) return;
+
+        // this is where we would tune to the channel
+        Log.d(TAG, "program starting: " + channels[channel].getProgramName(index)
+                + " channel: " + channels[channel].getName());
+    }
+
+    private void scheduleTick() {
+        handler.removeCallbacks(tick);
+
+        long wakeupTime = reminders.getNextWakeupTime();
+        if (wakeupTime != Long.MAX_VALUE) {
+            handler.postDelayed(tick, Math.max(0, wakeupTime - System.currentTimeMillis()));
+        }
+    }
+}
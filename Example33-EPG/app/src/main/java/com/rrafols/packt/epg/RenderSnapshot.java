@@ -0,0 +1,80 @@
+package com.rrafols.packt.epg;
+
+/**
+ * Immutable, precomputed drawing primitives of a window of the program area. Positions are
+ * program area coordinates at the time scale the snapshot has been built with: x as returned
+ * by getTimeHorizontalPosition and y relative to the top of the first channel. Horizontal
+ * positions do not include the program margin, so they can be scaled while zooming.
+ */
+class RenderSnapshot {
+    // window covered by the snapshot
+    final float timeScale;
+    final float left;
+    final float right;
+    final int firstChannel;
+    final int lastChannel;
+    final int channelCount;
+    final int contentVersion;
+    final long validUntil;
+
+    // per program: rect as left, top, right, bottom, highlight state, text and its baseline,
+    // and the full name to ellipsize the text again if drawn at another time scale
+    final int count;
+    final float[] rects;
+    final boolean[] highlighted;
+    final String[] texts;
+    final float[] textBaselines;
+    final String[] names;
+
+    // programs of channel firstChannel + i are in [channelStarts[i], channelStarts[i + 1])
+    final int[] channelStarts;
+
+    RenderSnapshot(float timeScale, float left, float right, int firstChannel, int lastChannel,
+                   int channelCount, int contentVersion, long validUntil, int count,
+                   float[] rects, boolean[] highlighted, String[] texts, float[] textBaselines,
+                   String[] names, int[] channelStarts) {
+        this.timeScale = timeScale;
+        this.left = left;
+        this.right = right;
+        this.firstChannel = firstChannel;
+        this.lastChannel = lastChannel;
+        this.channelCount = channelCount;
+        this.contentVersion = contentVersion;
+        this.validUntil = validUntil;
+        this.count = count;
+        this.rects = rects;
+        this.highlighted = highlighted;
+        this.texts = texts;
+        this.textBaselines = textBaselines;
+        this.names = names;
+        this.channelStarts = channelStarts;
+    }
+
+    /**
+     * Check if the window at the given scroll position and time scale is inside this snapshot.
+     * Horizontal positions are projected to the requested time scale.
+     */
+    boolean covers(float scrollX, float scrollY, float areaWidth, float areaHeight,
+                   float timeScale, float channelHeight) {
+
+        return covers(left, right, firstChannel, lastChannel, this.timeScale, channelCount,
+                scrollX, scrollY, areaWidth, areaHeight, timeScale, channelHeight);
+    }
+
+    /**
+     * Check if a window at the given scroll position and time scale is inside the window
+     * [left, right] x [firstChannel, lastChannel] built at windowTimeScale.
+     */
+    static boolean covers(float left, float right, int firstChannel, int lastChannel,
+                          float windowTimeScale, int channelCount,
+                          float scrollX, float scrollY, float areaWidth, float areaHeight,
+                          float timeScale, float channelHeight) {
+
+        float scale = timeScale / windowTimeScale;
+        if (scrollX < left * scale || scrollX + areaWidth > right * scale) return false;
+
+        int firstVisible = (int) (scrollY / channelHeight);
+        int lastVisible = Math.min((int) ((scrollY + areaHeight) / channelHeight), channelCount - 1);
+        return firstVisible >= firstChannel && lastVisible <= lastChannel;
+    }
+}
@@ -0,0 +1,199 @@
+package com.rrafols.packt.epg;
+
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import com.rrafols.packt.epg.data.ProgramIndex;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Builds RenderSnapshots on a background thread. The UI thread posts requests with the
+ * window to cover and the immutable ProgramIndex of every channel in it; the latest
+ * finished snapshot is published with an atomic swap. Pending requests are coalesced, only
+ * the most recent one is built.
+ */
+class RenderSnapshotBuilder {
+    interface Listener {
+        /**
+         * Called from the builder thread when a new snapshot is available.
+         */
+        void onSnapshotReady();
+    }
+
+    static class Request {
+        float timeScale;
+        float left;
+        float right;
+        int firstChannel;
+        int lastChannel;
+        int channelCount;
+        int contentVersion;
+        long initialTime;
+        long currentTime;
+        ProgramIndex[] indexes;
+    }
+
+    private final float channelHeight;
+    private final float programMargin;
+    private final TextLayoutCache textLayouts;
+    private final Listener listener;
+    private final AtomicReference<RenderSnapshot> snapshot;
+    private final AtomicReference<Request> pendingRequest;
+    private final AtomicBoolean buildScheduled;
+    private final Runnable buildRunnable;
+
+    private HandlerThread thread;
+    private Handler handler;
+
+    /**
+     * @param textPaint paint used to measure program names, it is copied as paints cannot be
+     *                  shared between threads
+     */
+    RenderSnapshotBuilder(Paint textPaint, float channelHeight, float programMargin,
+                          int maxTexts, Listener listener) {
+        this.channelHeight = channelHeight;
+        this.programMargin = programMargin;
+        this.listener = listener;
+
+        textLayouts = new TextLayoutCache(new Paint(textPaint), maxTexts);
+        snapshot = new AtomicReference<>();
+        pendingRequest = new AtomicReference<>();
+        buildScheduled = new AtomicBoolean();
+        buildRunnable = new Runnable() {
+            @Override
+            public void run() {
+                buildScheduled.set(false);
+                Request request = pendingRequest.getAndSet(null);
+                if (request != null) {
+                    snapshot.set(build(request));
+                    RenderSnapshotBuilder.this.listener.onSnapshotReady();
+                }
+            }
+        };
+    }
+
+    void start() {
+        if (thread != null) return;
+
+        thread = new HandlerThread("EPGSnapshotBuilder", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    void stop() {
+        if (thread == null) return;
+
+        thread.quit();
+        thread = null;
+        handler = null;
+        buildScheduled.set(false);
+    }
+
+    /**
+     * Return the latest snapshot built, or null if none is available yet.
+     */
+    RenderSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Queue a request replacing any request not started yet.
+     */
+    void request(Request request) {
+        pendingRequest.set(request);
+        if (handler != null && buildScheduled.compareAndSet(false, true)) {
+            handler.post(buildRunnable);
+        }
+    }
+
+    /**
+     * Build the pending request, if any, on the calling thread.
+     */
+    void buildPending() {
+        buildRunnable.run();
+    }
+
+    void clear() {
+        pendingRequest.set(null);
+        snapshot.set(null);
+    }
+
+    /**
+     * Project every program of the requested window, same math as EPG.drawChannelPrograms.
+     */
+    private RenderSnapshot build(Request request) {
+        int channels = request.lastChannel - request.firstChannel + 1;
+        int capacity = 16 * channels;
+        int count = 0;
+        float[] rects = new float[capacity * 4];
+        boolean[] highlighted = new boolean[capacity];
+        String[] texts = new String[capacity];
+        float[] textBaselines = new float[capacity];
+        String[] names = new String[capacity];
+        int[] channelStarts = new int[channels + 1];
+        long validUntil = Long.MAX_VALUE;
+
+        long leftTime = (long) (request.left / request.timeScale) + request.initialTime;
+        for (int i = 0; i < channels; i++) {
+            ProgramIndex index = request.indexes[i];
+            float channelTop = i * channelHeight;
+            channelStarts[i] = count;
+
+            for (int j = index.firstEndingAfter(leftTime); j < index.size(); j++) {
+                long st = index.getStartTime(j);
+                long et = index.getEndTime(j);
+                float programStartX = (st - request.initialTime) * request.timeScale;
+                float programEndX = (et - request.initialTime) * request.timeScale;
+
+                if (programStartX > request.right) break;
+                if (programEndX < request.left) continue;
+
+                if (count == capacity) {
+                    capacity *= 2;
+                    rects = Arrays.copyOf(rects, capacity * 4);
+                    highlighted = Arrays.copyOf(highlighted, capacity);
+                    texts = Arrays.copyOf(texts, capacity);
+                    textBaselines = Arrays.copyOf(textBaselines, capacity);
+                    names = Arrays.copyOf(names, capacity);
+                }
+
+                boolean onAir = st <= request.currentTime && et > request.currentTime;
+                if (onAir) {
+                    validUntil = Math.min(validUntil, et);
+                } else if (st > request.currentTime) {
+                    validUntil = Math.min(validUntil, st);
+                }
+
+                rects[count * 4] = programStartX;
+                rects[count * 4 + 1] = channelTop + programMargin;
+                rects[count * 4 + 2] = programEndX;
+                rects[count * 4 + 3] = channelTop + channelHeight - programMargin;
+                highlighted[count] = onAir;
+
+                String name = index.getName(j);
+                names[count] = name;
+                float textWidth = programEndX - programStartX - programMargin * 4;
+                if (name != null && textWidth > 0) {
+                    TextLayoutCache.TextLayout layout = textLayouts.get(name, textWidth);
+                    texts[count] = layout.text;
+                    textBaselines[count] = channelTop + layout.height
+                            + ((channelHeight - programMargin * 2) - layout.height) / 2;
+                } else {
+                    texts[count] = null;
+                }
+                count++;
+            }
+        }
+        channelStarts[channels] = count;
+
+        return new RenderSnapshot(request.timeScale, request.left, request.right,
+                request.firstChannel, request.lastChannel, request.channelCount,
+                request.contentVersion, validUntil, count, rects, highlighted, texts,
+                textBaselines, names, channelStarts);
+    }
+}
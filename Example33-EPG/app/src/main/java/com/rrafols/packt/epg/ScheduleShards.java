@@ -0,0 +1,209 @@
+package com.rrafols.packt.epg;
+
+import com.rrafols.packt.epg.data.Channel;
+import com.rrafols.packt.epg.data.ProgramIndex;
+
+import java.util.ArrayList;
+import java.util.TimeZone;
+
+/**
+ * Keeps track of the days of guide resident in memory. Shards are local days, a program
+ * belongs to the shard of the day it starts. Missing shards around the visible time range
+ * are requested to the ShardLoader and, once the memory used by the schedule goes over the
+ * limit, the loaded shards farther from the visible range are removed from the channels.
+ *
+ * Memory is measured on the channels whenever shards are loaded or evicted. Channels not
+ * loaded yet, for instance the ones of a guide snapshot still encoded, use no memory and are
+ * left untouched, so sharding does not force them to be decoded. Shards not loaded within
+ * LOAD_TIMEOUT are requested again.
+ */
+class ScheduleShards {
+    static final long DAY = 24 * 60 * 60 * 1000;
+
+    private static final int STATE_LOADING = 0;
+    private static final int STATE_LOADED = 1;
+
+    // days loaded around the visible range, on each side
+    private static final int PREFETCH_DAYS = 1;
+
+    static final long LOAD_TIMEOUT = 30 * 1000;
+
+    private static class Shard {
+        private long day;
+        private int state;
+        private long requestTime;
+    }
+
+    private final EPG.ShardLoader loader;
+    private final long maxBytes;
+    private final TimeZone timeZone;
+    private final ArrayList<Shard> shards;
+    private long residentBytes;
+
+    ScheduleShards(EPG.ShardLoader loader, long maxBytes) {
+        this.loader = loader;
+        this.maxBytes = maxBytes;
+
+        timeZone = TimeZone.getDefault();
+        shards = new ArrayList<>();
+    }
+
+    /**
+     * Return the local day containing the given time, as a number of days since the epoch.
+     */
+    long getDay(long time) {
+        long localTime = time + timeZone.getOffset(time);
+        long day = localTime / DAY;
+        return localTime < 0 && day * DAY != localTime ? day - 1 : day;
+    }
+
+    /**
+     * Return the UTC timestamp of the start of the given local day.
+     */
+    long getDayStart(long day) {
+        long localStart = day * DAY;
+        return localStart - timeZone.getOffset(localStart);
+    }
+
+    /**
+     * Request the missing shards around the visible time range. Visible days are always
+     * requested, the ones around them only if they are expected to fit in memory, otherwise
+     * they would be evicted as soon as they are loaded. Shards requested more than
+     * LOAD_TIMEOUT ago and still not loaded are requested again.
+     *
+     * @param uptime current time in milliseconds of a monotonic clock
+     */
+    void update(long visibleStart, long visibleEnd, long uptime) {
+        long firstVisibleDay = getDay(visibleStart);
+        long lastVisibleDay = getDay(visibleEnd);
+
+        for (long day = firstVisibleDay - PREFETCH_DAYS; day <= lastVisibleDay + PREFETCH_DAYS; day++) {
+            Shard shard = getShard(day);
+            if (shard != null) {
+                if (shard.state == STATE_LOADING && uptime - shard.requestTime >= LOAD_TIMEOUT) {
+                    shard.requestTime = uptime;
+                    loader.loadShard(getDayStart(day), getDayStart(day + 1));
+                }
+                continue;
+            }
+
+            boolean visible = day >= firstVisibleDay && day <= lastVisibleDay;
+            if (!visible && residentBytes + getAverageShardBytes() > maxBytes) continue;
+
+            shard = new Shard();
+            shard.day = day;
+            shard.state = STATE_LOADING;
+            shard.requestTime = uptime;
+            shards.add(shard);
+            loader.loadShard(getDayStart(day), getDayStart(day + 1));
+        }
+    }
+
+    /**
+     * Record that the programs of the day starting at dayStart have been added to the
+     * channels and evict the farthest shards if they do not fit anymore.
+     *
+     * @return true if any shard has been evicted
+     */
+    boolean onShardLoaded(Channel[] channels, long dayStart, long visibleStart, long visibleEnd) {
+        long day = getDay(dayStart);
+        Shard shard = getShard(day);
+        if (shard == null) {
+            shard = new Shard();
+            shard.day = day;
+            shards.add(shard);
+        }
+
+        shard.state = STATE_LOADED;
+        residentBytes = measure(channels);
+
+        return evict(channels, getDay(visibleStart), getDay(visibleEnd));
+    }
+
+    /**
+     * Approximate memory used by the loaded channels, in bytes, as measured the last time a
+     * shard was loaded or evicted.
+     */
+    long getResidentBytes() {
+        return residentBytes;
+    }
+
+    private long getAverageShardBytes() {
+        int loaded = getLoadedShardCount();
+        return loaded > 0 ? getResidentBytes() / loaded : 0;
+    }
+
+    int getLoadedShardCount() {
+        int loaded = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            if (shards.get(i).state == STATE_LOADED) loaded++;
+        }
+
+        return loaded;
+    }
+
+    void clear() {
+        shards.clear();
+        residentBytes = 0;
+    }
+
+    private boolean evict(Channel[] channels, long firstVisibleDay, long lastVisibleDay) {
+        boolean evicted = false;
+        while (residentBytes > maxBytes) {
+            // farthest loaded shard, never the visible ones
+            Shard farthest = null;
+            long farthestDistance = 0;
+            for (int i = 0; i < shards.size(); i++) {
+                Shard shard = shards.get(i);
+                if (shard.state != STATE_LOADED) continue;
+
+                long distance = Math.max(firstVisibleDay - shard.day, shard.day - lastVisibleDay);
+                if (distance > farthestDistance) {
+                    farthest = shard;
+                    farthestDistance = distance;
+                }
+            }
+
+            if (farthest == null) break;
+
+            removePrograms(channels, farthest.day);
+            shards.remove(farthest);
+            residentBytes = measure(channels);
+            evicted = true;
+        }
+
+        return evicted;
+    }
+
+    private static long measure(Channel[] channels) {
+        long bytes = 0;
+        for (Channel channel : channels) {
+            bytes += channel.estimateMemoryUsage();
+        }
+
+        return bytes;
+    }
+
+    private void removePrograms(Channel[] channels, long day) {
+        long start = getDayStart(day);
+        long end = getDayStart(day + 1);
+
+        for (Channel channel : channels) {
+            // accessing the index would decode it
+            if (!channel.isLoaded()) continue;
+
+            ProgramIndex index = channel.getProgramIndex();
+            int from = index.firstStartingFrom(start);
+            int to = index.firstStartingFrom(end);
+            if (from < to) channel.removePrograms(from, to);
+        }
+    }
+
+    private Shard getShard(long day) {
+        for (int i = 0; i < shards.size(); i++) {
+            if (shards.get(i).day == day) return shards.get(i);
+        }
+
+        return null;
+    }
+}
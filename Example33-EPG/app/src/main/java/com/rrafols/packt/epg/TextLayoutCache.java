@@ -0,0 +1,94 @@
+package com.rrafols.packt.epg;
+
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.LruCache;
+
+/**
+ * Cache of measured and ellipsized texts. Entries are keyed by the string, the text size of
+ * the paint and the available width rounded down to WIDTH_BUCKET pixels, so the same
+ * program name drawn on every frame is only measured once.
+ */
+class TextLayoutCache {
+    static final float UNBOUNDED = -1.f;
+
+    private static final int WIDTH_BUCKET = 8;
+    private static final int MAX_LAYOUTS_PER_TEXT = 4;
+    private static final String ELLIPSIS = "\u2026";
+
+    static class TextLayout {
+        // text to draw, ellipsized if it does not fit the available width. Might be empty.
+        String text;
+
+        // height of the full text bounds
+        int height;
+
+        private float textSize;
+        private int widthBucket;
+        private TextLayout next;
+    }
+
+    private final Paint paint;
+    private final LruCache<String, TextLayout> layouts;
+    private final Rect textBoundaries;
+
+    TextLayoutCache(Paint paint, int maxTexts) {
+        this.paint = paint;
+
+        layouts = new LruCache<>(maxTexts);
+        textBoundaries = new Rect();
+    }
+
+    /**
+     * Return the layout of a text fitting the available width, or not ellipsized at all if
+     * availableWidth is UNBOUNDED.
+     */
+    TextLayout get(String text, float availableWidth) {
+        float textSize = paint.getTextSize();
+        int widthBucket = availableWidth == UNBOUNDED ? -1 : (int) Math.max(0, availableWidth / WIDTH_BUCKET);
+
+        TextLayout first = layouts.get(text);
+        int count = 0;
+        for (TextLayout layout = first; layout != null; layout = layout.next) {
+            if (layout.widthBucket == widthBucket && layout.textSize == textSize) return layout;
+            count++;
+        }
+
+        TextLayout layout = measure(text, textSize, widthBucket);
+        if (count >= MAX_LAYOUTS_PER_TEXT) {
+            // too many widths for the same text, probably due to zooming, start over
+            first = null;
+        }
+        layout.next = first;
+        layouts.put(text, layout);
+        return layout;
+    }
+
+    void clear() {
+        layouts.evictAll();
+    }
+
+    private TextLayout measure(String text, float textSize, int widthBucket) {
+        TextLayout layout = new TextLayout();
+        layout.textSize = textSize;
+        layout.widthBucket = widthBucket;
+
+        paint.getTextBounds(text, 0, text.length(), textBoundaries);
+        layout.height = textBoundaries.height();
+
+        float width = widthBucket * WIDTH_BUCKET;
+        if (widthBucket == -1 || paint.measureText(text) <= width) {
+            layout.text = text;
+        } else {
+            float ellipsisWidth = paint.measureText(ELLIPSIS);
+            if (width < ellipsisWidth) {
+                layout.text = "";
+            } else {
+                int characters = paint.breakText(text, true, width - ellipsisWidth, null);
+                layout.text = text.substring(0, characters) + ELLIPSIS;
+            }
+        }
+
+        return layout;
+    }
+}
@@ -0,0 +1,151 @@
+package com.rrafols.packt.epg;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import java.util.ArrayList;
+
+/**
+ * Cache of rasterized EPG program grid tiles. Each tile covers a fixed range of channels and
+ * a fixed horizontal range at a given zoom level. Tiles are kept in a LRU list bounded by
+ * bytes and composited with a translation while scrolling, so programs are only drawn again
+ * when a tile is rendered for the first time or when the highlight of one of its programs
+ * changes.
+ */
+class TileCache {
+    static final int TILE_WIDTH = 512;
+    static final int CHANNELS_PER_TILE = 4;
+
+    private static class Tile {
+        private int row;
+        private int column;
+        private int zoomLevel;
+        private long validUntil;
+        private long lastUsed;
+        private Bitmap bitmap;
+    }
+
+    private final ArrayList<Tile> tiles;
+    private final Canvas tileCanvas;
+    private final float channelHeight;
+    private final int tileHeight;
+    private final int maxTiles;
+    private final int backgroundColor;
+    private long frame;
+
+    TileCache(int maxBytes, float channelHeight, int backgroundColor) {
+        this.channelHeight = channelHeight;
+        this.backgroundColor = backgroundColor;
+
+        tileHeight = (int) Math.ceil(channelHeight * CHANNELS_PER_TILE);
+        maxTiles = maxBytes / (TILE_WIDTH * tileHeight * 4);
+        tiles = new ArrayList<>(maxTiles);
+        tileCanvas = new Canvas();
+    }
+
+    /**
+     * Draw all the tiles visible on the program area. scrollX and scrollY are the program area
+     * positions shown at the (left, top) screen position.
+     *
+     * @return number of tiles drawn or -1 if the visible tiles do not fit in the cache and
+     * nothing has been drawn
+     */
+    int draw(Canvas canvas, ProgramAreaRenderer renderer, int zoomLevel,
+             float scrollX, float scrollY, float left, float top,
+             int width, int height, int channelCount, long currentTime) {
+
+        float rowHeight = channelHeight * CHANNELS_PER_TILE;
+        int firstColumn = (int) Math.floor(scrollX / TILE_WIDTH);
+        int lastColumn = (int) Math.floor((scrollX + width - left) / TILE_WIDTH);
+        int firstRow = (int) (scrollY / rowHeight);
+        int lastRow = Math.min((int) ((scrollY + height - top) / rowHeight),
+                (channelCount - 1) / CHANNELS_PER_TILE);
+
+        int visibleTiles = (lastColumn - firstColumn + 1) * (lastRow - firstRow + 1);
+        if (visibleTiles > maxTiles) return -1;
+
+        frame++;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                Tile tile = obtainTile(renderer, row, column, zoomLevel, channelCount, currentTime);
+
+                canvas.drawBitmap(tile.bitmap,
+                        Math.round(left + column * TILE_WIDTH - scrollX),
+                        Math.round(top + row * rowHeight - scrollY),
+                        null);
+            }
+        }
+
+        return visibleTiles;
+    }
+
+    /**
+     * Discard the tiles containing any of the channels in the given range.
+     */
+    void invalidateChannels(int firstChannel, int lastChannel) {
+        int firstRow = firstChannel / CHANNELS_PER_TILE;
+        int lastRow = lastChannel / CHANNELS_PER_TILE;
+        for (int i = 0; i < tiles.size(); i++) {
+            Tile tile = tiles.get(i);
+            if (tile.row >= firstRow && tile.row <= lastRow) tile.validUntil = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Discard all tiles and release their bitmaps.
+     */
+    void clear() {
+        for (int i = 0; i < tiles.size(); i++) {
+            tiles.get(i).bitmap.recycle();
+        }
+        tiles.clear();
+    }
+
+    private Tile obtainTile(ProgramAreaRenderer renderer, int row, int column, int zoomLevel,
+                            int channelCount, long currentTime) {
+        Tile tile = null;
+        Tile leastRecentlyUsed = null;
+        for (int i = 0; i < tiles.size(); i++) {
+            Tile t = tiles.get(i);
+            if (t.row == row && t.column == column && t.zoomLevel == zoomLevel) {
+                tile = t;
+                break;
+            }
+
+            if (t.lastUsed != frame && (leastRecentlyUsed == null || t.lastUsed < leastRecentlyUsed.lastUsed)) {
+                leastRecentlyUsed = t;
+            }
+        }
+
+        if (tile == null) {
+            if (tiles.size() < maxTiles) {
+                tile = new Tile();
+                tile.bitmap = Bitmap.createBitmap(TILE_WIDTH, tileHeight, Bitmap.Config.ARGB_8888);
+                tiles.add(tile);
+            } else {
+                // reuse the bitmap of the least recently used tile
+                tile = leastRecentlyUsed;
+            }
+
+            tile.row = row;
+            tile.column = column;
+            tile.zoomLevel = zoomLevel;
+            tile.validUntil = Long.MIN_VALUE;
+        }
+
+        if (currentTime >= tile.validUntil) {
+            int firstChannel = row * CHANNELS_PER_TILE;
+            int lastChannel = Math.min(firstChannel + CHANNELS_PER_TILE, channelCount) - 1;
+            float left = column * TILE_WIDTH;
+
+            tileCanvas.setBitmap(tile.bitmap);
+            tileCanvas.drawColor(backgroundColor);
+            tile.validUntil = renderer.render(tileCanvas, firstChannel, lastChannel,
+                    left, left + TILE_WIDTH, currentTime);
+            tileCanvas.setBitmap(null);
+        }
+
+        tile.lastUsed = frame;
+        return tile;
+    }
+}
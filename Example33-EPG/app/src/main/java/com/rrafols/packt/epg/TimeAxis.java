@@ -0,0 +1,94 @@
+package com.rrafols.packt.epg;
+
+import com.rrafols.packt.epg.util.TimeTextFormatter;
+
+/**
+ * Tick and label engine of the EPG time bar. Chooses the tick interval from the time scale
+ * so labels never overlap and aligns ticks to the local time. The horizontal offsets of the
+ * ticks are computed once per zoom level and labels come from the shared TimeTextFormatter
+ * cache.
+ */
+class TimeAxis {
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long[] TICK_INTERVALS = { 30 * MINUTE, HOUR, 3 * HOUR, 6 * HOUR };
+
+    private final TimeTextFormatter timeTextFormatter;
+
+    private float timeScale;
+    private float minTickSpacing;
+    private int width;
+    private long tickInterval;
+    private float[] tickOffsets;
+    private int tickCount;
+
+    TimeAxis() {
+        timeTextFormatter = TimeTextFormatter.getInstance();
+        tickInterval = TICK_INTERVALS[0];
+        tickOffsets = new float[0];
+    }
+
+    /**
+     * Update the time scale, in pixels per millisecond, select the smallest tick interval
+     * leaving at least minTickSpacing pixels between ticks and compute the offsets of the ticks
+     * needed to cover the given width.
+     */
+    void setTimeScale(float timeScale, float minTickSpacing, int width) {
+        if (timeScale == this.timeScale && minTickSpacing == this.minTickSpacing
+                && width == this.width) {
+            return;
+        }
+
+        this.timeScale = timeScale;
+        this.minTickSpacing = minTickSpacing;
+        this.width = width;
+
+        tickInterval = TICK_INTERVALS[TICK_INTERVALS.length - 1];
+        for (long interval : TICK_INTERVALS) {
+            if (interval * timeScale >= minTickSpacing) {
+                tickInterval = interval;
+                break;
+            }
+        }
+
+        // drawing starts from the tick before a label partially visible on the left edge, one
+        // more tick covers the rounding of the first tick position
+        float tickSpacing = tickInterval * timeScale;
+        tickCount = (int) ((width + minTickSpacing) / tickSpacing) + 3;
+        if (tickOffsets.length < tickCount) tickOffsets = new float[tickCount];
+        for (int i = 0; i < tickCount; i++) {
+            tickOffsets[i] = i * tickSpacing;
+        }
+    }
+
+    long getTickInterval() {
+        return tickInterval;
+    }
+
+    /**
+     * Horizontal offsets of the ticks relative to the first one, only the first getTickCount()
+     * are valid.
+     */
+    float[] getTickOffsets() {
+        return tickOffsets;
+    }
+
+    int getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Return the last tick at or before the given time. Ticks are aligned to the local time,
+     * so 3 and 6 hour ticks fall on 0:00, 3:00, 6:00... The zone is the one of the labels.
+     */
+    long getTickAtOrBefore(long time) {
+        long localTime = time + timeTextFormatter.getTimeZone().getOffset(time);
+        long remainder = localTime % tickInterval;
+        if (remainder < 0) remainder += tickInterval;
+        return time - remainder;
+    }
+
+    String getLabel(long time) {
+        return timeTextFormatter.getShortTimeText(time);
+    }
+}
@@ -1,62 +1,183 @@
 package com.rrafols.packt.epg.anim;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Set;
+import java.util.Arrays;
 
+/**
+ * Animation engine for float values. Values are registered once and addressed by the int
+ * handle returned by register, current, target and factor values are stored in parallel
+ * arrays so every tick is a single loop over primitive arrays. The number of values still
+ * animating is kept up to date, so checking for pending animations does not scan them.
+ *
+ * Once the capacity is big enough, ticking and updating values does not allocate any memory.
+ */
 public class Animator {
-    private HashMap<String, AnimPair> values;
+    private static final float THRESHOLD = 0.01f;
+    private static final float DEFAULT_FACTOR = 0.25f;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private float[] current;
+    private float[] target;
+    private float[] factor;
+    private boolean[] animating;
+    private boolean[] registered;
+    private int count;
+    private int animatingCount;
+
+    // handles released by unregister, reused before growing the arrays
+    private int[] freeHandles;
+    private int freeCount;
 
     public Animator() {
-        values = new HashMap<>();
+        this(INITIAL_CAPACITY);
     }
 
-    public boolean hasPendingAnimations() {
-        Collection<AnimPair> animValues = values.values();
-        for (AnimPair ap : animValues) {
-            if (!ap.isFinished()) return false;
-        }
-
-        return true;
+    public Animator(int capacity) {
+        capacity = Math.max(1, capacity);
+        current = new float[capacity];
+        target = new float[capacity];
+        factor = new float[capacity];
+        animating = new boolean[capacity];
+        registered = new boolean[capacity];
+        freeHandles = new int[capacity];
     }
 
-    public void update(String key, float dt) {
+    /**
+     * Register a value moving a quarter of the remaining distance on every tick.
+     *
+     * @return handle of the value
+     */
+    public int register(float current, float target) {
+        return register(current, target, DEFAULT_FACTOR);
+    }
 
-        if (values.containsKey(key)) {
-            AnimPair ap = values.get(key);
-            ap.setTarget(ap.getTarget() + dt);
+    /**
+     * Register a value moving the given fraction, between 0 and 1, of the remaining distance
+     * on every tick.
+     *
+     * @return handle of the value
+     */
+    public int register(float current, float target, float factor) {
+        int handle;
+        if (freeCount > 0) {
+            handle = freeHandles[--freeCount];
         } else {
-            // add a new animation key, assuming current value is 0
-            put(key, 0, dt);
+            if (count == this.current.length) grow(count * 2);
+            handle = count++;
         }
+
+        registered[handle] = true;
+        this.current[handle] = current;
+        this.target[handle] = current;
+        this.factor[handle] = factor;
+        animating[handle] = false;
+        setTarget(handle, target);
+        return handle;
     }
 
-    public void put(String key, float current, float target) {
-        AnimPair ap;
+    /**
+     * Release a handle, it might be returned again by a later call to register.
+     */
+    public void unregister(int handle) {
+        if (!registered[handle]) return;
 
-        if (values.containsKey(key)) {
-            ap = values.get(key);
-        } else {
-            ap = new AnimPair(current, target);
+        if (animating[handle]) {
+            animating[handle] = false;
+            animatingCount--;
         }
+        registered[handle] = false;
+        freeHandles[freeCount++] = handle;
+    }
 
-        values.put(key, ap);
+    public float get(int handle) {
+        return current[handle];
     }
 
-    public float get(String key) {
-        if (values.containsKey(key)) {
-            return values.get(key).getCurrent();
-        } else {
-            return 0.f; // should throw an exception
-        }
+    public float getTarget(int handle) {
+        return target[handle];
+    }
+
+    /**
+     * Return the value as it would be after the given fraction of the next tick. Useful to
+     * draw frames between logic ticks.
+     */
+    public float getInterpolated(int handle, float fraction) {
+        return current[handle] + (target[handle] - current[handle]) * factor[handle] * fraction;
+    }
+
+    public void setTarget(int handle, float target) {
+        this.target[handle] = target;
+        updateState(handle);
+    }
+
+    /**
+     * Move the target by the given amount, for instance while dragging.
+     */
+    public void addToTarget(int handle, float delta) {
+        setTarget(handle, target[handle] + delta);
     }
 
-    public HashMap<String, AnimPair> getFullState() {
-        return values;
+    /**
+     * Set the current value and the target at once, finishing any animation of the value.
+     */
+    public void jumpTo(int handle, float value) {
+        current[handle] = value;
+        setTarget(handle, value);
+    }
+
+    public boolean isAnimating(int handle) {
+        return animating[handle];
+    }
+
+    public boolean hasPendingAnimations() {
+        return animatingCount > 0;
+    }
+
+    /**
+     * Number of values not yet at their target.
+     */
+    public int getAnimatingCount() {
+        return animatingCount;
     }
 
     public void logicTick() {
-        Collection<AnimPair> animValues = values.values();
-        for (AnimPair ap : animValues) ap.logicTick();
+        if (animatingCount == 0) return;
+
+        float[] current = this.current;
+        float[] target = this.target;
+        float[] factor = this.factor;
+        boolean[] animating = this.animating;
+        int finished = 0;
+        for (int i = 0; i < count; i++) {
+            if (!animating[i]) continue;
+
+            float remaining = target[i] - current[i];
+            if (Math.abs(remaining) < THRESHOLD) {
+                current[i] = target[i];
+                animating[i] = false;
+                finished++;
+            } else {
+                current[i] += remaining * factor[i];
+            }
+        }
+        animatingCount -= finished;
+    }
+
+    private void updateState(int handle) {
+        boolean finished = Math.abs(target[handle] - current[handle]) < THRESHOLD;
+        if (finished) current[handle] = target[handle];
+
+        if (animating[handle] == finished) {
+            animating[handle] = !finished;
+            animatingCount += finished ? -1 : 1;
+        }
+    }
+
+    private void grow(int capacity) {
+        current = Arrays.copyOf(current, capacity);
+        target = Arrays.copyOf(target, capacity);
+        factor = Arrays.copyOf(factor, capacity);
+        animating = Arrays.copyOf(animating, capacity);
+        registered = Arrays.copyOf(registered, capacity);
+        freeHandles = Arrays.copyOf(freeHandles, capacity);
     }
-}
\ No newline at end of file
+}
@@ -1,29 +1,21 @@
 package com.rrafols.packt.epg.data;
 
-import android.graphics.Bitmap;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 
 public class Channel {
     private String name;
     private String iconUrl;
-    private Bitmap icon;
     private ArrayList<Program> programs;
+    private ProgramIndex programIndex;
 
     public Channel(String name, String iconUrl) {
         this.name = name;
-        this.icon = null;
         this.iconUrl = iconUrl;
         this.programs = new ArrayList<>();
     }
 
-    public Bitmap getIcon() {
-        return icon;
-    }
-
-    public void setIcon(Bitmap icon) {
-        this.icon = icon;
-    }
-
     public String getName() {
         return name;
     }
@@ -42,9 +34,120 @@ public class Channel {
 
     public void addProgram(Program program) {
         programs.add(program);
+        programIndex = null;
+    }
+
+    public void addProgram(String name, String description, long startTime, long endTime) {
+        addProgram(new Program(name, description, startTime, endTime));
+    }
+
+    /**
+     * Remove the program at the given position of the schedule.
+     */
+    public void removeProgram(int index) {
+        getProgramIndex();
+        programs.remove(index);
+        programIndex = null;
+    }
+
+    /**
+     * Remove the programs in the [fromIndex, toIndex) positions of the schedule.
+     */
+    public void removePrograms(int fromIndex, int toIndex) {
+        getProgramIndex();
+        programs.subList(fromIndex, toIndex).clear();
+        programIndex = null;
+    }
+
+    /**
+     * Return the position of the program starting at the given time or -1 if there is none.
+     */
+    public int indexOfProgram(long startTime) {
+        return getProgramIndex().indexOfStartTime(startTime);
     }
 
     public ArrayList<Program> getPrograms() {
         return programs;
     }
+
+    /**
+     * Number of programs in this channel schedule.
+     */
+    public int getProgramCount() {
+        return programs.size();
+    }
+
+    /**
+     * Return the program at the given position of the schedule, positions match the ones
+     * used by the ProgramIndex.
+     */
+    public Program getProgram(int index) {
+        getProgramIndex();
+        return programs.get(index);
+    }
+
+    public String getProgramName(int index) {
+        return getProgram(index).getName();
+    }
+
+    public String getProgramDescription(int index) {
+        return getProgram(index).getDescription();
+    }
+
+    /**
+     * Whether the programs are in memory. Channels of a guide snapshot decode them the first
+     * time they are accessed.
+     */
+    public boolean isLoaded() {
+        return true;
+    }
+
+    /**
+     * Approximate heap footprint, in bytes, used by the schedule of this channel.
+     */
+    public long estimateMemoryUsage() {
+        long size = MemoryEstimate.ARRAY_LIST_SIZE
+                + MemoryEstimate.arraySize(programs.size(), MemoryEstimate.REFERENCE_SIZE);
+
+        for (int i = 0; i < programs.size(); i++) {
+            Program program = programs.get(i);
+            size += MemoryEstimate.PROGRAM_SIZE
+                    + MemoryEstimate.stringSize(program.getName())
+                    + MemoryEstimate.stringSize(program.getDescription());
+        }
+
+        if (programIndex != null) {
+            size += MemoryEstimate.arraySize(programIndex.size(), 8) * 3
+                    + MemoryEstimate.arraySize(programIndex.size(), MemoryEstimate.REFERENCE_SIZE);
+        }
+
+        return size;
+    }
+
+    /**
+     * Return the interval index of this channel schedule. It is built lazily and discarded
+     * every time a program is added, sorting the programs by start time if required.
+     */
+    public ProgramIndex getProgramIndex() {
+        if (programIndex == null) {
+            sortPrograms();
+            programIndex = ProgramIndex.build(programs);
+        }
+
+        return programIndex;
+    }
+
+    private void sortPrograms() {
+        for (int i = 1; i < programs.size(); i++) {
+            if (programs.get(i).getStartTime() < programs.get(i - 1).getStartTime()) {
+                Collections.sort(programs, new Comparator<Program>() {
+                    @Override
+                    public int compare(Program p1, Program p2) {
+                        return Long.compare(p1.getStartTime(), p2.getStartTime());
+                    }
+                });
+                return;
+            }
+        }
+    }
 }
@@ -0,0 +1,221 @@
+package com.rrafols.packt.epg.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Channel backend storing its schedule in parallel primitive arrays instead of one Program
+ * object per entry. Names and descriptions are indices into a StringTable shared between
+ * channels. Program objects are only created on demand, for instance when a program is
+ * clicked, and are not kept by the channel.
+ */
+public class ColumnarChannel extends Channel {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final StringTable stringTable;
+    private long[] startTimes;
+    private long[] endTimes;
+    private int[] nameIds;
+    private int[] descriptionIds;
+    private int count;
+    private ProgramIndex programIndex;
+
+    public ColumnarChannel(String name, String iconUrl, StringTable stringTable) {
+        super(name, iconUrl);
+
+        this.stringTable = stringTable;
+        startTimes = new long[INITIAL_CAPACITY];
+        endTimes = new long[INITIAL_CAPACITY];
+        nameIds = new int[INITIAL_CAPACITY];
+        descriptionIds = new int[INITIAL_CAPACITY];
+        count = 0;
+    }
+
+    @Override
+    public void addProgram(Program program) {
+        addProgram(program.getName(),
+                program.getDescription(),
+                program.getStartTime(),
+                program.getEndTime());
+    }
+
+    /**
+     * Add a program without creating an intermediate Program object. Programs are expected
+     * to be added in order, otherwise it will be inserted at its sorted position.
+     */
+    @Override
+    public void addProgram(String name, String description, long startTime, long endTime) {
+        ensureCapacity(count + 1);
+
+        int position = count;
+        while (position > 0 && startTimes[position - 1] > startTime) position--;
+
+        if (position < count) {
+            // arrays might be shared with the current index, copy them before shifting
+            copyArrays(startTimes.length);
+            shift(position, 1);
+        }
+
+        startTimes[position] = startTime;
+        endTimes[position] = endTime;
+        nameIds[position] = stringTable.add(name);
+        descriptionIds[position] = stringTable.add(description);
+        count++;
+        programIndex = null;
+    }
+
+    @Override
+    public void removeProgram(int index) {
+        removePrograms(index, index + 1);
+    }
+
+    @Override
+    public void removePrograms(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > count || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("[" + fromIndex + ", " + toIndex + ") size: " + count);
+        }
+
+        // arrays might be shared with the current index, copy them before shifting. Capacity
+        // is released as well if most of it would be unused, for instance after evicting days
+        int removed = toIndex - fromIndex;
+        int capacity = startTimes.length;
+        if (count - removed < capacity / 4) capacity = Math.max(INITIAL_CAPACITY, capacity / 2);
+        copyArrays(capacity, fromIndex, toIndex);
+
+        count -= removed;
+        programIndex = null;
+    }
+
+    /**
+     * Materialize all the programs of this channel. This is expensive, prefer using
+     * getProgram(int) or the ProgramIndex.
+     */
+    @Override
+    public ArrayList<Program> getPrograms() {
+        ArrayList<Program> programs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            programs.add(getProgram(i));
+        }
+
+        return programs;
+    }
+
+    @Override
+    public int getProgramCount() {
+        return count;
+    }
+
+    @Override
+    public Program getProgram(int index) {
+        checkIndex(index);
+        return new Program(stringTable.get(nameIds[index]),
+                stringTable.get(descriptionIds[index]),
+                startTimes[index],
+                endTimes[index]);
+    }
+
+    @Override
+    public String getProgramName(int index) {
+        checkIndex(index);
+        return stringTable.get(nameIds[index]);
+    }
+
+    @Override
+    public String getProgramDescription(int index) {
+        checkIndex(index);
+        return stringTable.get(descriptionIds[index]);
+    }
+
+    @Override
+    public ProgramIndex getProgramIndex() {
+        if (programIndex == null) {
+            programIndex = new ProgramIndex(startTimes, endTimes, nameIds,
+                    stringTable.getStrings(), count);
+        }
+
+        return programIndex;
+    }
+
+    /**
+     * The arrays have spare capacity past count, reject indices ArrayList.get would reject.
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("index: " + index + " size: " + count);
+        }
+    }
+
+    /**
+     * Release unused array capacity once all programs have been added.
+     */
+    public void trimToSize() {
+        copyArrays(count);
+        programIndex = null;
+    }
+
+    @Override
+    public long estimateMemoryUsage() {
+        long size = MemoryEstimate.arraySize(startTimes.length, 8)
+                + MemoryEstimate.arraySize(endTimes.length, 8)
+                + MemoryEstimate.arraySize(nameIds.length, 4)
+                + MemoryEstimate.arraySize(descriptionIds.length, 4);
+
+        if (programIndex != null) {
+            // start and end arrays are shared, only the max end time array is extra
+            size += MemoryEstimate.arraySize(programIndex.size(), 8);
+        }
+
+        return size;
+    }
+
+    public StringTable getStringTable() {
+        return stringTable;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > startTimes.length) {
+            copyArrays(Math.max(capacity, startTimes.length * 2));
+        }
+    }
+
+    /**
+     * Copy the arrays to new ones of the given capacity skipping the [fromIndex, toIndex)
+     * range.
+     */
+    private void copyArrays(int capacity, int fromIndex, int toIndex) {
+        long[] newStartTimes = new long[capacity];
+        long[] newEndTimes = new long[capacity];
+        int[] newNameIds = new int[capacity];
+        int[] newDescriptionIds = new int[capacity];
+
+        int length = count - toIndex;
+        System.arraycopy(startTimes, 0, newStartTimes, 0, fromIndex);
+        System.arraycopy(startTimes, toIndex, newStartTimes, fromIndex, length);
+        System.arraycopy(endTimes, 0, newEndTimes, 0, fromIndex);
+        System.arraycopy(endTimes, toIndex, newEndTimes, fromIndex, length);
+        System.arraycopy(nameIds, 0, newNameIds, 0, fromIndex);
+        System.arraycopy(nameIds, toIndex, newNameIds, fromIndex, length);
+        System.arraycopy(descriptionIds, 0, newDescriptionIds, 0, fromIndex);
+        System.arraycopy(descriptionIds, toIndex, newDescriptionIds, fromIndex, length);
+
+        startTimes = newStartTimes;
+        endTimes = newEndTimes;
+        nameIds = newNameIds;
+        descriptionIds = newDescriptionIds;
+    }
+
+    private void copyArrays(int capacity) {
+        startTimes = Arrays.copyOf(startTimes, capacity);
+        endTimes = Arrays.copyOf(endTimes, capacity);
+        nameIds = Arrays.copyOf(nameIds, capacity);
+        descriptionIds = Arrays.copyOf(descriptionIds, capacity);
+    }
+
+    private void shift(int position, int offset) {
+        int length = count - position;
+        System.arraycopy(startTimes, position, startTimes, position + offset, length);
+        System.arraycopy(endTimes, position, endTimes, position + offset, length);
+        System.arraycopy(nameIds, position, nameIds, position + offset, length);
+        System.arraycopy(descriptionIds, position, descriptionIds, position + offset, length);
+    }
+}
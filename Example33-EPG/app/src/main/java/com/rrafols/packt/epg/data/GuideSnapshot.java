@@ -0,0 +1,402 @@
+package com.rrafols.packt.epg.data;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Binary snapshot of a guide, written once the guide has been loaded and memory mapped on
+ * the next launch so the first frame does not wait for the guide to be parsed again.
+ *
+ * Layout, all values big endian:
+ * <pre>
+ * header      magic, version, created time, channel count, string count,
+ *             string offsets position, string data position
+ * channels    name id + 1, icon url id + 1, program count and programs position, per channel
+ * strings     string count + 1 offsets into the UTF-8 string data
+ * programs    per channel, variable length encoded: first start time, then for every
+ *             program its gap from the previous end, duration, name id + 1 and
+ *             description id + 1. Ids + 1 are 0 for null strings.
+ * </pre>
+ *
+ * Snapshots are written from ProgramIndex instances and description arrays captured from the
+ * channels, which are immutable and can be encoded on a background thread while the channels
+ * keep changing.
+ *
+ * Opening a snapshot only reads the header and the channel names, programs of a channel are
+ * decoded the first time they are accessed. Channels are not thread safe, same as the rest,
+ * but all the programs can be queued to a search index from a background thread as they are
+ * decoded from the file without going through the channels.
+ *
+ * Every position, count and string offset is checked when opening, so a truncated or corrupt
+ * file is rejected with an IOException. Programs are only checked as they are decoded, a
+ * channel failing to decode is left empty and the listener is notified so the owner can drop
+ * the snapshot.
+ */
+public class GuideSnapshot {
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x45504753; // "EPGS"
+    private static final int HEADER_SIZE = 32;
+    private static final int CHANNEL_ENTRY_SIZE = 16;
+
+    // after the first start time, gap, duration, name and description take a byte at least
+    private static final int MIN_PROGRAM_SIZE = 4;
+
+    private interface ProgramSink {
+        void add(String name, String description, long startTime, long endTime);
+    }
+
+    public interface Listener {
+        /**
+         * Called when the programs of a channel cannot be decoded, usually while drawing.
+         */
+        void onSnapshotCorrupted(GuideSnapshot snapshot, IOException e);
+    }
+
+    private final ByteBuffer buffer;
+    private final long createdTime;
+    private final int stringCount;
+    private final int stringOffsetsPosition;
+    private final int stringDataPosition;
+    private final String[] strings;
+    private final int[] programPositions;
+    private final int[] programCounts;
+    private final StringTable stringTable;
+    private final Channel[] channels;
+    private Listener listener;
+    private boolean corrupted;
+
+    private GuideSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("not a guide snapshot");
+        }
+
+        int version = buffer.getInt(4);
+        if (version != VERSION) throw new IOException("unsupported snapshot version " + version);
+
+        createdTime = buffer.getLong(8);
+        int channelCount = buffer.getInt(16);
+        stringCount = buffer.getInt(20);
+        stringOffsetsPosition = buffer.getInt(24);
+        stringDataPosition = buffer.getInt(28);
+
+        // sections follow each other, computed as longs so huge counts do not overflow
+        int limit = buffer.limit();
+        if (channelCount < 0 || stringCount < 0
+                || stringOffsetsPosition != HEADER_SIZE + (long) channelCount * CHANNEL_ENTRY_SIZE
+                || stringDataPosition != stringOffsetsPosition + (stringCount + 1L) * 4
+                || stringDataPosition > limit) {
+            throw new IOException("invalid snapshot header");
+        }
+
+        int previousOffset = 0;
+        for (int i = 0; i <= stringCount; i++) {
+            int offset = buffer.getInt(stringOffsetsPosition + i * 4);
+            if (offset < previousOffset || (i == 0 && offset != 0)
+                    || offset > limit - stringDataPosition) {
+                throw new IOException("invalid string offset " + offset);
+            }
+            previousOffset = offset;
+        }
+        int programsPosition = stringDataPosition + previousOffset;
+
+        strings = new String[stringCount];
+        stringTable = new StringTable();
+        channels = new Channel[channelCount];
+        programPositions = new int[channelCount];
+        programCounts = new int[channelCount];
+        for (int i = 0; i < channelCount; i++) {
+            int entry = HEADER_SIZE + i * CHANNEL_ENTRY_SIZE;
+            int programCount = buffer.getInt(entry + 8);
+            int position = buffer.getInt(entry + 12);
+            if (programCount < 0 || position < programsPosition
+                    || position + (long) programCount * MIN_PROGRAM_SIZE >= limit) {
+                throw new IOException("invalid programs of channel " + i);
+            }
+
+            programPositions[i] = position;
+            programCounts[i] = programCount;
+            channels[i] = new MappedChannel(getString(buffer, strings, buffer.getInt(entry) - 1),
+                    getString(buffer, strings, buffer.getInt(entry + 4) - 1),
+                    stringTable,
+                    this,
+                    position,
+                    programCount);
+        }
+    }
+
+    /**
+     * Memory map a snapshot written by write(). The file can be deleted or replaced afterwards.
+     *
+     * @throws IOException if it cannot be read or it has been written by another version
+     */
+    public static GuideSnapshot open(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new GuideSnapshot(buffer);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Write a guide to the given file, channel i has the given name, icon url and schedule,
+     * descriptions[i][j] is the description of program j of the schedule. Only immutable data
+     * is read, so it can be called from any thread. The file is replaced atomically, so a
+     * snapshot being written is never opened.
+     */
+    public static void write(String[] names, String[] iconUrls, ProgramIndex[] schedules,
+                             String[][] descriptions, File file) throws IOException {
+        int channelCount = schedules.length;
+        HashMap<String, Integer> stringIds = new HashMap<>();
+        ArrayList<String> strings = new ArrayList<>();
+
+        int[] channelNames = new int[channelCount];
+        int[] channelIcons = new int[channelCount];
+        byte[][] programBlocks = new byte[channelCount][];
+        for (int i = 0; i < channelCount; i++) {
+            channelNames[i] = addString(names[i], stringIds, strings);
+            channelIcons[i] = addString(iconUrls[i], stringIds, strings);
+            programBlocks[i] = encodePrograms(schedules[i], descriptions[i], stringIds, strings);
+        }
+
+        ByteArrayOutputStream stringData = new ByteArrayOutputStream();
+        int[] stringOffsets = new int[strings.size() + 1];
+        for (int i = 0; i < strings.size(); i++) {
+            byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            stringData.write(bytes, 0, bytes.length);
+            stringOffsets[i + 1] = stringData.size();
+        }
+
+        int stringOffsetsPosition = HEADER_SIZE + channelCount * CHANNEL_ENTRY_SIZE;
+        int stringDataPosition = stringOffsetsPosition + stringOffsets.length * 4;
+        int programsPosition = stringDataPosition + stringData.size();
+
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(System.currentTimeMillis());
+            output.writeInt(channelCount);
+            output.writeInt(strings.size());
+            output.writeInt(stringOffsetsPosition);
+            output.writeInt(stringDataPosition);
+
+            for (int i = 0; i < channelCount; i++) {
+                output.writeInt(channelNames[i] + 1);
+                output.writeInt(channelIcons[i] + 1);
+                output.writeInt(schedules[i].size());
+                output.writeInt(programsPosition);
+                programsPosition += programBlocks[i].length;
+            }
+
+            for (int offset : stringOffsets) {
+                output.writeInt(offset);
+            }
+            stringData.writeTo(output);
+
+            for (byte[] block : programBlocks) {
+                output.write(block);
+            }
+        } finally {
+            output.close();
+        }
+
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("cannot replace " + file);
+        }
+    }
+
+    /**
+     * Time the snapshot was written, to discard outdated snapshots.
+     */
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    public Channel[] getChannels() {
+        return channels;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Whether programs of any channel have failed to decode.
+     */
+    public boolean isCorrupted() {
+        return corrupted;
+    }
+
+    /**
+     * Table shared by all the channels of the snapshot, strings are only added to it as
+     * channels are decoded.
+     */
+    public StringTable getStringTable() {
+        return stringTable;
+    }
+
+    /**
+     * Queue the programs of all the channels to the search index. Only the mapped file is
+     * read, channels are left encoded, so it can be called from any thread.
+     *
+     * @throws IOException if programs run past the end of the file or refer to invalid strings
+     */
+    public void addToSearchIndex(final ProgramSearchIndex searchIndex) throws IOException {
+        ByteBuffer view = buffer.duplicate();
+        String[] decodedStrings = new String[stringCount];
+        for (int i = 0; i < channels.length; i++) {
+            final int channelIndex = i;
+            decodePrograms(view, decodedStrings, programPositions[i], programCounts[i],
+                    new ProgramSink() {
+                        @Override
+                        public void add(String name, String description, long startTime, long endTime) {
+                            searchIndex.add(channelIndex, name, description, startTime);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Decode the programs of a channel starting at the given position into the channel.
+     *
+     * @throws IOException if they run past the end of the file or refer to invalid strings
+     */
+    void decodePrograms(final ColumnarChannel channel, int position, int count) throws IOException {
+        decodePrograms(buffer, strings, position, count, new ProgramSink() {
+            @Override
+            public void add(String name, String description, long startTime, long endTime) {
+                channel.addProgram(name, description, startTime, endTime);
+            }
+        });
+    }
+
+    /**
+     * Notify the listener once, programs of the channel failed to decode.
+     */
+    void onDecodeFailed(IOException e) {
+        if (corrupted) return;
+
+        corrupted = true;
+        if (listener != null) listener.onSnapshotCorrupted(this, e);
+    }
+
+    private void decodePrograms(ByteBuffer buffer, String[] strings, int position, int count,
+                                ProgramSink sink) throws IOException {
+        int[] cursor = { position };
+        long time = readVarLong(buffer, cursor);
+        for (int i = 0; i < count; i++) {
+            long startTime = time + readVarLong(buffer, cursor);
+            long endTime = startTime + readVarLong(buffer, cursor);
+            String name = getString(buffer, strings, readVarLong(buffer, cursor) - 1);
+            String description = getString(buffer, strings, readVarLong(buffer, cursor) - 1);
+
+            sink.add(name, description, startTime, endTime);
+            time = endTime;
+        }
+    }
+
+    /**
+     * Return the string with the given id, decoding it into the given cache if required.
+     */
+    private String getString(ByteBuffer buffer, String[] strings, long id) throws IOException {
+        if (id == -1) return null;
+        if (id < 0 || id >= stringCount) throw new IOException("invalid string id " + id);
+
+        String string = strings[(int) id];
+        if (string == null) {
+            // offsets have been checked when opening
+            int start = buffer.getInt(stringOffsetsPosition + (int) id * 4);
+            int end = buffer.getInt(stringOffsetsPosition + ((int) id + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer view = buffer.duplicate();
+            view.position(stringDataPosition + start);
+            view.get(bytes);
+
+            string = new String(bytes, StandardCharsets.UTF_8);
+            strings[(int) id] = string;
+        }
+
+        return string;
+    }
+
+    private static byte[] encodePrograms(ProgramIndex index, String[] descriptions,
+                                         HashMap<String, Integer> stringIds,
+                                         ArrayList<String> strings) {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long time = index.size() > 0 ? index.getStartTime(0) : 0;
+        writeVarLong(output, time);
+
+        for (int i = 0; i < index.size(); i++) {
+            long startTime = index.getStartTime(i);
+            long endTime = index.getEndTime(i);
+            writeVarLong(output, startTime - time);
+            writeVarLong(output, endTime - startTime);
+            writeVarLong(output, addString(index.getName(i), stringIds, strings) + 1);
+            writeVarLong(output, addString(descriptions[i], stringIds, strings) + 1);
+            time = endTime;
+        }
+
+        return output.toByteArray();
+    }
+
+    private static int addString(String string, HashMap<String, Integer> stringIds,
+                                 ArrayList<String> strings) {
+        if (string == null) return -1;
+
+        Integer id = stringIds.get(string);
+        if (id == null) {
+            id = strings.size();
+            strings.add(string);
+            stringIds.put(string, id);
+        }
+
+        return id;
+    }
+
+    // zig-zag encoded so small negative values, overlapping programs, are short as well
+    private static void writeVarLong(ByteArrayOutputStream output, long value) {
+        long encoded = (value << 1) ^ (value >> 63);
+        while ((encoded & ~0x7fL) != 0) {
+            output.write((int) ((encoded & 0x7f) | 0x80));
+            encoded >>>= 7;
+        }
+        output.write((int) encoded);
+    }
+
+    private static long readVarLong(ByteBuffer buffer, int[] cursor) throws IOException {
+        long encoded = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (cursor[0] >= buffer.limit() || shift > 63) {
+                throw new IOException("invalid value at " + cursor[0]);
+            }
+            b = buffer.get(cursor[0]++);
+            encoded |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+}
@@ -0,0 +1,103 @@
+package com.rrafols.packt.epg.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Channel of a GuideSnapshot. Its programs stay encoded in the mapped file until they are
+ * accessed for the first time, usually when the channel becomes visible.
+ */
+class MappedChannel extends ColumnarChannel {
+    private final GuideSnapshot snapshot;
+    private final int programsPosition;
+    private final int programCount;
+    private boolean loaded;
+
+    MappedChannel(String name, String iconUrl, StringTable stringTable, GuideSnapshot snapshot,
+                  int programsPosition, int programCount) {
+        super(name, iconUrl, stringTable);
+
+        this.snapshot = snapshot;
+        this.programsPosition = programsPosition;
+        this.programCount = programCount;
+    }
+
+    @Override
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    @Override
+    public void addProgram(String name, String description, long startTime, long endTime) {
+        ensureLoaded();
+        super.addProgram(name, description, startTime, endTime);
+    }
+
+    @Override
+    public void removePrograms(int fromIndex, int toIndex) {
+        ensureLoaded();
+        super.removePrograms(fromIndex, toIndex);
+    }
+
+    @Override
+    public ArrayList<Program> getPrograms() {
+        ensureLoaded();
+        return super.getPrograms();
+    }
+
+    @Override
+    public int getProgramCount() {
+        // known without decoding, as long as nothing has been added or removed
+        return loaded ? super.getProgramCount() : programCount;
+    }
+
+    @Override
+    public Program getProgram(int index) {
+        ensureLoaded();
+        return super.getProgram(index);
+    }
+
+    @Override
+    public String getProgramName(int index) {
+        ensureLoaded();
+        return super.getProgramName(index);
+    }
+
+    @Override
+    public String getProgramDescription(int index) {
+        ensureLoaded();
+        return super.getProgramDescription(index);
+    }
+
+    @Override
+    public ProgramIndex getProgramIndex() {
+        ensureLoaded();
+        return super.getProgramIndex();
+    }
+
+    @Override
+    public void trimToSize() {
+        ensureLoaded();
+        super.trimToSize();
+    }
+
+    @Override
+    public long estimateMemoryUsage() {
+        return loaded ? super.estimateMemoryUsage() : 0;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+
+        // set first, decoding adds the programs through addProgram
+        loaded = true;
+        try {
+            snapshot.decodePrograms(this, programsPosition, programCount);
+        } catch (IOException e) {
+            // accessed while drawing, leave the channel empty until the snapshot is dropped
+            super.removePrograms(0, super.getProgramCount());
+            snapshot.onDecodeFailed(e);
+        }
+        super.trimToSize();
+    }
+}
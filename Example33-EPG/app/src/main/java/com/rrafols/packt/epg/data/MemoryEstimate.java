@@ -0,0 +1,40 @@
+package com.rrafols.packt.epg.data;
+
+/**
+ * Rough object size constants used to compare the heap footprint of the different channel
+ * backends. Values assume 4 byte references and 8 byte aligned objects, as on ART.
+ */
+final class MemoryEstimate {
+    static final int REFERENCE_SIZE = 4;
+    static final int OBJECT_HEADER_SIZE = 8;
+    static final int ARRAY_HEADER_SIZE = 12;
+
+    // header + 2 longs + name and description references
+    static final int PROGRAM_SIZE = align(OBJECT_HEADER_SIZE + 2 * 8 + 2 * REFERENCE_SIZE);
+
+    // header + size + modCount + elementData reference
+    static final int ARRAY_LIST_SIZE = align(OBJECT_HEADER_SIZE + 3 * 4);
+
+    private MemoryEstimate() {
+    }
+
+    static long arraySize(int length, int elementSize) {
+        return align(ARRAY_HEADER_SIZE + (long) length * elementSize);
+    }
+
+    static long stringSize(String string) {
+        if (string == null) return 0;
+
+        // header + count + hash + char array
+        return align(OBJECT_HEADER_SIZE + 2 * 4 + REFERENCE_SIZE)
+                + arraySize(string.length(), 2);
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,98 @@
+package com.rrafols.packt.epg.data;
+
+/**
+ * Keeps a cursor per channel pointing to the first program not finished yet. As the wall
+ * clock moves forward cursors advance incrementally, usually by zero or one program, so
+ * asking what is on now on every channel is O(channels) instead of searching every schedule.
+ * Cursors are searched again when the time goes backwards or a channel schedule changes.
+ *
+ * Meant to be used from a single thread.
+ */
+public class NowPlayingTracker {
+    private Channel[] channels;
+    private ProgramIndex[] indexes;
+    private int[] cursors;
+    private long[] cursorTimes;
+
+    public NowPlayingTracker() {
+        setChannels(new Channel[0]);
+    }
+
+    public NowPlayingTracker(Channel[] channels) {
+        setChannels(channels);
+    }
+
+    public void setChannels(Channel[] channels) {
+        this.channels = channels;
+        indexes = new ProgramIndex[channels.length];
+        cursors = new int[channels.length];
+        cursorTimes = new long[channels.length];
+    }
+
+    /**
+     * Return the index of the program on air on the given channel, or -1 if there is none.
+     */
+    public int getNowIndex(int channel, long time) {
+        int cursor = advance(channel, time);
+        ProgramIndex index = indexes[channel];
+        if (cursor < index.size() && index.getStartTime(cursor) <= time) return cursor;
+
+        return -1;
+    }
+
+    /**
+     * Return the index of the next program starting after the given time on a channel, or -1
+     * if there is none.
+     */
+    public int getNextIndex(int channel, long time) {
+        int cursor = advance(channel, time);
+        ProgramIndex index = indexes[channel];
+        if (cursor < index.size() && index.getStartTime(cursor) <= time) cursor++;
+
+        return cursor < index.size() ? cursor : -1;
+    }
+
+    /**
+     * Fill nowIndices and nextIndices with the program on air and the next program of every
+     * channel, -1 if there is none. Both arrays need at least one element per channel, any of
+     * them can be null if not required.
+     */
+    public void getNowNext(long time, int[] nowIndices, int[] nextIndices) {
+        for (int i = 0; i < channels.length; i++) {
+            int now = getNowIndex(i, time);
+            if (nowIndices != null) nowIndices[i] = now;
+
+            if (nextIndices != null) {
+                int next = (now != -1 ? now : cursors[i] - 1) + 1;
+                nextIndices[i] = next < indexes[i].size() ? next : -1;
+            }
+        }
+    }
+
+    /**
+     * Fill programs with the program on air on every channel, or null for channels without
+     * any. Program objects are materialized, so use getNowNext if only indices are needed.
+     */
+    public void getNowPlaying(long time, Program[] programs) {
+        for (int i = 0; i < channels.length; i++) {
+            int now = getNowIndex(i, time);
+            programs[i] = now != -1 ? channels[i].getProgram(now) : null;
+        }
+    }
+
+    private int advance(int channel, long time) {
+        ProgramIndex index = channels[channel].getProgramIndex();
+        if (index != indexes[channel] || time < cursorTimes[channel]) {
+            // schedule changed or going back in time, search from scratch
+            indexes[channel] = index;
+            cursors[channel] = index.firstEndingAfter(time);
+        } else {
+            int cursor = cursors[channel];
+            while (cursor < index.size() && index.getEndTime(cursor) <= time) cursor++;
+            cursors[channel] = cursor;
+        }
+
+        cursorTimes[channel] = time;
+        return cursors[channel];
+    }
+}
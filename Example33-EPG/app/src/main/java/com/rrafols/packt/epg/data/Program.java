@@ -1,18 +1,12 @@
 package com.rrafols.packt.epg.data;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-import java.util.concurrent.TimeUnit;
+import com.rrafols.packt.epg.util.TimeTextFormatter;
 
 public class Program {
     private String name;
     private String description;
     private long startTime;
     private long endTime;
-    private String startTimeText;
-    private String endTimeText;
-    private String timeText;
 
     public Program(String name, String description, long startTime, long endTime) {
         this.name = name;
@@ -54,31 +48,14 @@ public class Program {
     }
 
     public String getStartTimeText() {
-        if (startTimeText == null) {
-            startTimeText = getTextTime(startTime);
-        }
-
-        return startTimeText;
+        return TimeTextFormatter.getInstance().getTimeText(startTime);
     }
 
     public String getEndTimeText() {
-        if (endTimeText == null) {
-            endTimeText = getTextTime(endTime);
-        }
-
-        return endTimeText;
+        return TimeTextFormatter.getInstance().getTimeText(endTime);
     }
 
     public String getTimeText() {
-        if (timeText == null) {
-            timeText = getStartTimeText() + " - " + getEndTimeText();
-        }
-        return timeText;
-    }
-
-    private static String getTextTime(long time) {
-        Date date = new Date(time);
-        SimpleDateFormat dateFormatter = new SimpleDateFormat("HH:mm:ss", Locale.US);
-        return dateFormatter.format(date);
+        return TimeTextFormatter.getInstance().getTimeRangeText(startTime, endTime);
     }
 }
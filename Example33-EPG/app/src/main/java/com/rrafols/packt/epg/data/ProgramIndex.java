@@ -0,0 +1,158 @@
+package com.rrafols.packt.epg.data;
+
+import java.util.List;
+
+/**
+ * Sorted interval index over the programs of a channel. Start and end times are kept in
+ * primitive arrays so we can binary search the first visible program and answer point
+ * queries in O(log n) instead of walking the whole schedule.
+ *
+ * Instances are immutable, if the schedule changes a new index has to be built. This makes
+ * them safe to be read from other threads, for instance to prepare rendering data.
+ */
+public class ProgramIndex {
+    private final long[] startTimes;
+    private final long[] endTimes;
+
+    // maxEndTimes[i] is the biggest end time of programs 0..i, so it is always sorted even
+    // if some programs overlap.
+    private final long[] maxEndTimes;
+    private final int count;
+
+    // names are either stored directly or as identifiers into a string array
+    private final String[] names;
+    private final int[] nameIds;
+    private final String[] strings;
+
+    public ProgramIndex(long[] startTimes, long[] endTimes, String[] names, int count) {
+        this(startTimes, endTimes, names, null, null, count);
+    }
+
+    public ProgramIndex(long[] startTimes, long[] endTimes, int[] nameIds, String[] strings, int count) {
+        this(startTimes, endTimes, null, nameIds, strings, count);
+    }
+
+    private ProgramIndex(long[] startTimes, long[] endTimes, String[] names, int[] nameIds,
+                         String[] strings, int count) {
+        this.startTimes = startTimes;
+        this.endTimes = endTimes;
+        this.names = names;
+        this.nameIds = nameIds;
+        this.strings = strings;
+        this.count = count;
+
+        maxEndTimes = new long[count];
+        long maxEnd = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            maxEnd = Math.max(maxEnd, endTimes[i]);
+            maxEndTimes[i] = maxEnd;
+        }
+    }
+
+    /**
+     * Build an index from a list of programs already sorted by start time.
+     */
+    static ProgramIndex build(List<Program> programs) {
+        int count = programs.size();
+        long[] startTimes = new long[count];
+        long[] endTimes = new long[count];
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            Program program = programs.get(i);
+            startTimes[i] = program.getStartTime();
+            endTimes[i] = program.getEndTime();
+            names[i] = program.getName();
+        }
+
+        return new ProgramIndex(startTimes, endTimes, names, count);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long getStartTime(int index) {
+        return startTimes[index];
+    }
+
+    public long getEndTime(int index) {
+        return endTimes[index];
+    }
+
+    public String getName(int index) {
+        if (names != null) return names[index];
+
+        int id = nameIds[index];
+        return id != -1 ? strings[id] : null;
+    }
+
+    /**
+     * Return the index of the first program starting at or after the given time, or size()
+     * if all programs start before it.
+     */
+    public int firstStartingFrom(long time) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (startTimes[mid] >= time) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Return the index of the program starting exactly at the given time or -1 if there is
+     * none.
+     */
+    public int indexOfStartTime(long time) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (startTimes[mid] < time) {
+                low = mid + 1;
+            } else if (startTimes[mid] > time) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Return the index of the first program ending after the given time, or size() if all
+     * programs have already finished. Programs before this index can be skipped when drawing.
+     */
+    public int firstEndingAfter(long time) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (maxEndTimes[mid] > time) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Return the index of the program being broadcast at the given time or -1 if there is none.
+     */
+    public int indexAt(long time) {
+        for (int i = firstEndingAfter(time); i < count && startTimes[i] <= time; i++) {
+            if (endTimes[i] > time) return i;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,481 @@
+package com.rrafols.packt.epg.data;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timing wheel firing program start and end events, for instance to remind or
+ * tune to favorite programs. Events are bucketed by tick in four levels of 64 slots, so
+ * scheduling and cancelling are O(1) and advancing the clock only touches the slots that
+ * expire, instead of polling all the schedules. Events further than 64^4 ticks away wait
+ * in an overflow list.
+ *
+ * Events are kept in primitive arrays recycled through a free list, memory is proportional
+ * to the maximum number of pending events and never goes beyond maxEvents. The time is
+ * read from a Clock so it can be driven from tests. Meant to be used from a single thread.
+ *
+ * Array entries are reused once their event is fired or cancelled. Handles combine the
+ * entry with a generation bumped on every reuse, so a stale handle cannot cancel the event
+ * now using its entry, at least until the generation wraps around after 128 reuses.
+ */
+public class ProgramReminders {
+    public static final int EVENT_START = 0;
+    public static final int EVENT_END = 1;
+
+    // flags for scheduleChannel
+    public static final int STARTS = 1;
+    public static final int ENDS = 2;
+
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    public interface Listener {
+        /**
+         * Called in time order for every event due. Events can be scheduled or cancelled
+         * from here, but advance must not be called.
+         */
+        void onProgramEvent(int type, int channel, long startTime, long eventTime);
+    }
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    // catching up tick by tick is cheap but not free, jumps bigger than this rebuild the wheel
+    private static final long MAX_CATCH_UP_TICKS = SLOTS * SLOTS;
+
+    // two extra lists after the wheel slots: events already late and events too far away
+    private static final int LATE = LEVELS * SLOTS;
+    private static final int OVERFLOW = LATE + 1;
+    private static final int FREE = -1;
+    private static final int DUE = -2;
+    private static final int CANCELLED = -3;
+    private static final int INITIAL_CAPACITY = 256;
+
+    // handles keep the entry in the lower bits and its generation in the upper ones
+    private static final int INDEX_BITS = 24;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    private static final int GENERATION_MASK = 0x7f;
+
+    private final Clock clock;
+    private final Listener listener;
+    private final long resolution;
+    private final int maxEvents;
+
+    private final int[] heads;
+    private long[] times;
+    private long[] startTimes;
+    private int[] channels;
+    private byte[] types;
+    private int[] slots;
+    private int[] next;
+    private int[] previous;
+    private byte[] generations;
+    private int allocated;
+    private int freeHead;
+    private int size;
+
+    private long currentTick;
+    private int[] due;
+    private int[] sortBuffer;
+    private int dueCount;
+
+    /**
+     * @param resolution tick length in milliseconds, events are fired at most this late
+     * @param maxEvents maximum number of pending events, up to 2^24
+     */
+    public ProgramReminders(Clock clock, long resolution, int maxEvents, Listener listener) {
+        if (maxEvents <= 0 || maxEvents > INDEX_MASK + 1) {
+            throw new IllegalArgumentException("maxEvents: " + maxEvents);
+        }
+
+        this.clock = clock;
+        this.resolution = resolution;
+        this.maxEvents = maxEvents;
+        this.listener = listener;
+
+        heads = new int[OVERFLOW + 1];
+        Arrays.fill(heads, -1);
+        grow(Math.min(INITIAL_CAPACITY, maxEvents));
+        due = new int[INITIAL_CAPACITY];
+        sortBuffer = new int[INITIAL_CAPACITY];
+        freeHead = -1;
+
+        currentTick = tickOf(clock.currentTimeMillis());
+    }
+
+    /**
+     * Schedule an event at eventTime for the program of a channel starting at startTime.
+     * Events already due are fired on the next call to advance.
+     *
+     * @return handle to cancel the event or -1 if there are already maxEvents pending
+     */
+    public int schedule(int type, int channel, long startTime, long eventTime) {
+        if (size == maxEvents) return -1;
+
+        int handle;
+        if (freeHead != -1) {
+            handle = freeHead;
+            freeHead = next[handle];
+        } else {
+            if (allocated == times.length) grow(Math.min(allocated * 2, maxEvents));
+            handle = allocated++;
+        }
+
+        times[handle] = eventTime;
+        startTimes[handle] = startTime;
+        channels[handle] = channel;
+        types[handle] = (byte) type;
+        insert(handle);
+        size++;
+        return (generations[handle] << INDEX_BITS) | handle;
+    }
+
+    /**
+     * Schedule the start, leadTime before it, and end events of the programs of a channel
+     * starting in [from, to). Stops scheduling if there are already maxEvents pending.
+     *
+     * @param events STARTS, ENDS or both
+     * @return number of events scheduled
+     */
+    public int scheduleChannel(int channel, ProgramIndex index, long from, long to,
+                               int events, long leadTime) {
+        int scheduled = 0;
+        for (int i = index.firstStartingFrom(from); i < index.size(); i++) {
+            long startTime = index.getStartTime(i);
+            if (startTime >= to) break;
+
+            if ((events & STARTS) != 0) {
+                if (schedule(EVENT_START, channel, startTime, startTime - leadTime) == -1) break;
+                scheduled++;
+            }
+            if ((events & ENDS) != 0) {
+                if (schedule(EVENT_END, channel, startTime, index.getEndTime(i)) == -1) break;
+                scheduled++;
+            }
+        }
+
+        return scheduled;
+    }
+
+    /**
+     * Cancel a pending event.
+     *
+     * @return false if the event was already fired or cancelled
+     */
+    public boolean cancel(int eventHandle) {
+        if (eventHandle < 0) return false;
+
+        int handle = eventHandle & INDEX_MASK;
+        if (handle >= allocated || generations[handle] != eventHandle >>> INDEX_BITS) return false;
+
+        int slot = slots[handle];
+        if (slot == FREE || slot == CANCELLED) return false;
+
+        if (slot == DUE) {
+            // about to be fired, it is released when its turn comes
+            slots[handle] = CANCELLED;
+        } else {
+            unlink(handle);
+            release(handle);
+        }
+        return true;
+    }
+
+    /**
+     * Fire, in time order, all the events due at the current clock time. If the clock went
+     * backwards, pending events are kept and fired when the clock reaches them again. If it
+     * jumped forward, all events missed are fired at once.
+     *
+     * Should be called at getNextWakeupTime, calling it earlier or more often is harmless.
+     */
+    public void advance() {
+        long nowTick = tickOf(clock.currentTimeMillis());
+
+        dueCount = 0;
+        collectLate(nowTick);
+
+        // if the clock went backwards the wheel waits until it reaches the current tick again
+        if (nowTick - currentTick > MAX_CATCH_UP_TICKS) {
+            rebuild(nowTick);
+        } else {
+            while (currentTick < nowTick) {
+                currentTick++;
+                cascade();
+                collect((int) (currentTick & (SLOTS - 1)));
+            }
+        }
+
+        fireDue();
+    }
+
+    /**
+     * Return the time advance has to be called next, which might be earlier than the next
+     * event if events have to move to a lower level of the wheel, Long.MAX_VALUE if there are
+     * no pending events.
+     */
+    public long getNextWakeupTime() {
+        if (size == 0) return Long.MAX_VALUE;
+
+        long wakeupTick = Long.MAX_VALUE;
+        for (int handle = heads[LATE]; handle != -1; handle = next[handle]) {
+            wakeupTick = Math.min(wakeupTick, eventTickOf(times[handle]));
+        }
+
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = level * SLOT_BITS;
+            long current = currentTick >> shift;
+            for (int i = 1; i < SLOTS; i++) {
+                if (heads[level * SLOTS + (int) ((current + i) & (SLOTS - 1))] != -1) {
+                    wakeupTick = Math.min(wakeupTick, (current + i) << shift);
+                    break;
+                }
+            }
+        }
+
+        if (heads[OVERFLOW] != -1) {
+            int shift = LEVELS * SLOT_BITS;
+            wakeupTick = Math.min(wakeupTick, ((currentTick >> shift) + 1) << shift);
+        }
+
+        return wakeupTick == Long.MAX_VALUE ? Long.MAX_VALUE : wakeupTick * resolution;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Cancel all pending events.
+     */
+    public void clear() {
+        Arrays.fill(heads, -1);
+        for (int handle = 0; handle < allocated; handle++) {
+            if (slots[handle] != FREE) nextGeneration(handle);
+            slots[handle] = FREE;
+        }
+        allocated = 0;
+        freeHead = -1;
+        size = 0;
+    }
+
+    private long tickOf(long time) {
+        // floor division, times before the epoch are unlikely but valid
+        return (time >= 0 ? time : time - resolution + 1) / resolution;
+    }
+
+    /**
+     * Return the first tick at or after the given time, so events are never fired early.
+     */
+    private long eventTickOf(long time) {
+        return -tickOf(-time);
+    }
+
+    private void insert(int handle) {
+        long tick = eventTickOf(times[handle]);
+        if (tick <= currentTick) {
+            link(handle, LATE);
+            return;
+        }
+
+        // lowest level where the event falls within the next 64 slots
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = level * SLOT_BITS;
+            if ((tick >> shift) - (currentTick >> shift) < SLOTS) {
+                link(handle, level * SLOTS + (int) ((tick >> shift) & (SLOTS - 1)));
+                return;
+            }
+        }
+
+        link(handle, OVERFLOW);
+    }
+
+    /**
+     * Move the events of the higher level slots starting at the current tick to lower levels.
+     * Higher levels go first, so events cascade down more than one level at once if needed.
+     */
+    private void cascade() {
+        if ((currentTick & ((1L << (LEVELS * SLOT_BITS)) - 1)) == 0) reinsert(OVERFLOW);
+
+        for (int level = LEVELS - 1; level > 0; level--) {
+            int shift = level * SLOT_BITS;
+            if ((currentTick & ((1L << shift) - 1)) == 0) {
+                reinsert(level * SLOTS + (int) ((currentTick >> shift) & (SLOTS - 1)));
+            }
+        }
+    }
+
+    private void reinsert(int slot) {
+        int handle = heads[slot];
+        heads[slot] = -1;
+        while (handle != -1) {
+            int following = next[handle];
+            if (eventTickOf(times[handle]) == currentTick) {
+                // due on this very tick, its level 0 slot is collected right after cascading
+                link(handle, (int) (currentTick & (SLOTS - 1)));
+            } else {
+                insert(handle);
+            }
+            handle = following;
+        }
+    }
+
+    /**
+     * Place all pending events again relative to the given tick, events up to it are due.
+     */
+    private void rebuild(long tick) {
+        int[] pending = new int[size];
+        int count = 0;
+        for (int slot = 0; slot < heads.length; slot++) {
+            for (int handle = heads[slot]; handle != -1; handle = next[handle]) {
+                pending[count++] = handle;
+            }
+            heads[slot] = -1;
+        }
+
+        currentTick = tick;
+        for (int i = 0; i < count; i++) {
+            int handle = pending[i];
+            if (eventTickOf(times[handle]) <= tick) {
+                addDue(handle);
+            } else {
+                insert(handle);
+            }
+        }
+    }
+
+    /**
+     * Move all the events of a slot to the due list.
+     */
+    private void collect(int slot) {
+        int handle = heads[slot];
+        heads[slot] = -1;
+        while (handle != -1) {
+            int following = next[handle];
+            addDue(handle);
+            handle = following;
+        }
+    }
+
+    /**
+     * Move the late events already due at the given tick to the due list. Events scheduled
+     * after the clock went backwards might not be due yet.
+     */
+    private void collectLate(long tick) {
+        int handle = heads[LATE];
+        while (handle != -1) {
+            int following = next[handle];
+            if (eventTickOf(times[handle]) <= tick) {
+                unlink(handle);
+                addDue(handle);
+            }
+            handle = following;
+        }
+    }
+
+    private void addDue(int handle) {
+        if (dueCount == due.length) due = Arrays.copyOf(due, dueCount * 2);
+        due[dueCount++] = handle;
+        slots[handle] = DUE;
+    }
+
+    private void fireDue() {
+        if (dueCount == 0) return;
+
+        sortDue();
+
+        // events are released before calling the listener, it might schedule new ones
+        for (int i = 0; i < dueCount; i++) {
+            int handle = due[i];
+            boolean cancelled = slots[handle] == CANCELLED;
+            int type = types[handle];
+            int channel = channels[handle];
+            long startTime = startTimes[handle];
+            long eventTime = times[handle];
+            release(handle);
+
+            if (!cancelled) listener.onProgramEvent(type, channel, startTime, eventTime);
+        }
+        dueCount = 0;
+    }
+
+    /**
+     * Stable merge sort of the due events by time, avoids boxing handles to use Arrays.sort.
+     */
+    private void sortDue() {
+        if (sortBuffer.length < dueCount) sortBuffer = new int[due.length];
+
+        int[] events = due;
+        int[] buffer = sortBuffer;
+        for (int width = 1; width < dueCount; width *= 2) {
+            for (int low = 0; low < dueCount - width; low += width * 2) {
+                int middle = low + width;
+                int high = Math.min(low + width * 2, dueCount);
+
+                int i = low;
+                int j = middle;
+                int k = low;
+                while (i < middle && j < high) {
+                    if (times[events[j]] < times[events[i]]) {
+                        buffer[k++] = events[j++];
+                    } else {
+                        buffer[k++] = events[i++];
+                    }
+                }
+                while (i < middle) buffer[k++] = events[i++];
+                while (j < high) buffer[k++] = events[j++];
+
+                System.arraycopy(buffer, low, events, low, high - low);
+            }
+        }
+    }
+
+    private void link(int handle, int slot) {
+        int head = heads[slot];
+        next[handle] = head;
+        previous[handle] = -1;
+        if (head != -1) previous[head] = handle;
+        heads[slot] = handle;
+        slots[handle] = slot;
+    }
+
+    private void unlink(int handle) {
+        int slot = slots[handle];
+        if (previous[handle] != -1) {
+            next[previous[handle]] = next[handle];
+        } else {
+            heads[slot] = next[handle];
+        }
+        if (next[handle] != -1) previous[next[handle]] = previous[handle];
+    }
+
+    private void release(int handle) {
+        nextGeneration(handle);
+        slots[handle] = FREE;
+        next[handle] = freeHead;
+        freeHead = handle;
+        size--;
+    }
+
+    private void nextGeneration(int handle) {
+        generations[handle] = (byte) ((generations[handle] + 1) & GENERATION_MASK);
+    }
+
+    private void grow(int capacity) {
+        times = times == null ? new long[capacity] : Arrays.copyOf(times, capacity);
+        startTimes = startTimes == null ? new long[capacity] : Arrays.copyOf(startTimes, capacity);
+        channels = channels == null ? new int[capacity] : Arrays.copyOf(channels, capacity);
+        types = types == null ? new byte[capacity] : Arrays.copyOf(types, capacity);
+        slots = slots == null ? new int[capacity] : Arrays.copyOf(slots, capacity);
+        next = next == null ? new int[capacity] : Arrays.copyOf(next, capacity);
+        previous = previous == null ? new int[capacity] : Arrays.copyOf(previous, capacity);
+        generations = generations == null ? new byte[capacity] : Arrays.copyOf(generations, capacity);
+    }
+}
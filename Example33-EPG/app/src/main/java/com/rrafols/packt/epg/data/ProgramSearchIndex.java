@@ -0,0 +1,352 @@
+package com.rrafols.packt.epg.data;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Inverted index over program names and descriptions. Every word, lower cased and without
+ * accents, maps to the list of entries containing it, so a search is a few sorted map
+ * lookups instead of scanning all the programs. The last word of a query matches as a
+ * prefix, so results are available while typing.
+ *
+ * Programs can be added from any thread, tokenizing and indexing happens on a background
+ * thread. Entries are not removed when the schedule changes, results should be checked
+ * against the channel before using them.
+ */
+public class ProgramSearchIndex {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int INDEX_BATCH_SIZE = 256;
+
+    public static class Result {
+        private final int channel;
+        private final long startTime;
+        private final String name;
+
+        Result(int channel, long startTime, String name) {
+            this.channel = channel;
+            this.startTime = startTime;
+            this.name = name;
+        }
+
+        public int getChannel() {
+            return channel;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private static class Postings {
+        private int[] ids = new int[4];
+        private int count;
+
+        void add(int id) {
+            // an entry might contain the same word more than once
+            if (count > 0 && ids[count - 1] == id) return;
+
+            if (count == ids.length) ids = Arrays.copyOf(ids, count * 2);
+            ids[count++] = id;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final Runnable indexRunnable;
+
+    // programs waiting to be indexed, guarded by pendingLock
+    private final Object pendingLock;
+    private int[] pendingChannels;
+    private String[] pendingNames;
+    private String[] pendingDescriptions;
+    private long[] pendingStartTimes;
+    private int pendingCount;
+    private boolean indexScheduled;
+    private boolean shutdown;
+
+    // indexed entries and postings, guarded by this
+    private final TreeMap<String, Postings> postings;
+    private int[] entryChannels;
+    private long[] entryStartTimes;
+    private String[] entryNames;
+    private int entryCount;
+
+    public ProgramSearchIndex() {
+        executor = Executors.newSingleThreadExecutor();
+        indexRunnable = new Runnable() {
+            @Override
+            public void run() {
+                indexPending();
+            }
+        };
+
+        pendingLock = new Object();
+        pendingChannels = new int[INITIAL_CAPACITY];
+        pendingNames = new String[INITIAL_CAPACITY];
+        pendingDescriptions = new String[INITIAL_CAPACITY];
+        pendingStartTimes = new long[INITIAL_CAPACITY];
+
+        postings = new TreeMap<>();
+        entryChannels = new int[INITIAL_CAPACITY];
+        entryStartTimes = new long[INITIAL_CAPACITY];
+        entryNames = new String[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Queue a program to be indexed. It is cheap enough to be called while parsing the guide.
+     */
+    public void add(int channel, String name, String description, long startTime) {
+        synchronized (pendingLock) {
+            if (shutdown) return;
+
+            if (pendingCount == pendingChannels.length) {
+                int capacity = pendingCount * 2;
+                pendingChannels = Arrays.copyOf(pendingChannels, capacity);
+                pendingNames = Arrays.copyOf(pendingNames, capacity);
+                pendingDescriptions = Arrays.copyOf(pendingDescriptions, capacity);
+                pendingStartTimes = Arrays.copyOf(pendingStartTimes, capacity);
+            }
+
+            pendingChannels[pendingCount] = channel;
+            pendingNames[pendingCount] = name;
+            pendingDescriptions[pendingCount] = description;
+            pendingStartTimes[pendingCount] = startTime;
+            pendingCount++;
+
+            if (!indexScheduled) {
+                indexScheduled = true;
+                executor.execute(indexRunnable);
+            }
+        }
+    }
+
+    /**
+     * Queue all the programs of a channel. Programs are read on the calling thread.
+     */
+    public void addChannel(int channelIndex, Channel channel) {
+        for (int i = 0; i < channel.getProgramCount(); i++) {
+            Program program = channel.getProgram(i);
+            add(channelIndex, program.getName(), program.getDescription(), program.getStartTime());
+        }
+    }
+
+    /**
+     * Return up to maxResults entries containing all the words of the query, in the order
+     * they were added. Matching stops as soon as there are enough results.
+     */
+    public List<Result> search(String query, int maxResults) {
+        ArrayList<String> terms = new ArrayList<>();
+        tokenize(query, terms);
+
+        ArrayList<Result> results = new ArrayList<>();
+        if (terms.isEmpty()) return results;
+
+        synchronized (this) {
+            // posting lists matching every term, the last one as a prefix
+            ArrayList<ArrayList<Postings>> termPostings = new ArrayList<>(terms.size());
+            int smallest = 0;
+            long smallestSize = Long.MAX_VALUE;
+            for (int i = 0; i < terms.size(); i++) {
+                String term = terms.get(i);
+                ArrayList<Postings> lists = new ArrayList<>();
+                if (i == terms.size() - 1) {
+                    lists.addAll(postings.subMap(term, true, term + Character.MAX_VALUE, false).values());
+                } else {
+                    Postings list = postings.get(term);
+                    if (list != null) lists.add(list);
+                }
+
+                long size = 0;
+                for (int j = 0; j < lists.size(); j++) size += lists.get(j).count;
+                if (size == 0) return results;
+
+                if (size < smallestSize) {
+                    smallest = i;
+                    smallestSize = size;
+                }
+                termPostings.add(lists);
+            }
+
+            // walk the candidates of the most selective term, checking the others with a
+            // binary search, until there are enough results
+            ArrayList<Postings> smallestLists = termPostings.get(smallest);
+            if (smallestLists.size() == 1) {
+                // already sorted, no need to merge
+                Postings list = smallestLists.get(0);
+                for (int i = 0; i < list.count && results.size() < maxResults; i++) {
+                    addResult(results, termPostings, smallest, list.ids[i]);
+                }
+            } else {
+                BitSet candidates = new BitSet(entryCount);
+                for (int i = 0; i < smallestLists.size(); i++) {
+                    Postings list = smallestLists.get(i);
+                    for (int j = 0; j < list.count; j++) candidates.set(list.ids[j]);
+                }
+
+                for (int id = candidates.nextSetBit(0); id >= 0 && results.size() < maxResults;
+                     id = candidates.nextSetBit(id + 1)) {
+                    addResult(results, termPostings, smallest, id);
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Number of entries already indexed and searchable.
+     */
+    public synchronized int size() {
+        return entryCount;
+    }
+
+    /**
+     * Number of distinct words in the index.
+     */
+    public synchronized int getTermCount() {
+        return postings.size();
+    }
+
+    /**
+     * Stop the indexing thread. Programs not indexed yet are discarded, as well as programs
+     * added afterwards by loaders still running.
+     */
+    public void shutdown() {
+        synchronized (pendingLock) {
+            shutdown = true;
+            executor.shutdownNow();
+        }
+    }
+
+    private void indexPending() {
+        int[] channels;
+        String[] names;
+        String[] descriptions;
+        long[] startTimes;
+        int count;
+        synchronized (pendingLock) {
+            channels = Arrays.copyOf(pendingChannels, pendingCount);
+            names = Arrays.copyOf(pendingNames, pendingCount);
+            descriptions = Arrays.copyOf(pendingDescriptions, pendingCount);
+            startTimes = Arrays.copyOf(pendingStartTimes, pendingCount);
+            count = pendingCount;
+
+            Arrays.fill(pendingNames, 0, pendingCount, null);
+            Arrays.fill(pendingDescriptions, 0, pendingCount, null);
+            pendingCount = 0;
+            indexScheduled = false;
+        }
+
+        // tokenize outside of the lock and only hold it while adding a batch, so searches
+        // do not wait for the whole queue to be indexed
+        ArrayList<String> tokens = new ArrayList<>();
+        int[] tokenCounts = new int[INDEX_BATCH_SIZE];
+        for (int start = 0; start < count; start += INDEX_BATCH_SIZE) {
+            int end = Math.min(count, start + INDEX_BATCH_SIZE);
+
+            tokens.clear();
+            for (int i = start; i < end; i++) {
+                int before = tokens.size();
+                tokenize(names[i], tokens);
+                tokenize(descriptions[i], tokens);
+                tokenCounts[i - start] = tokens.size() - before;
+            }
+
+            synchronized (this) {
+                int token = 0;
+                for (int i = start; i < end; i++) {
+                    int id = addEntry(channels[i], startTimes[i], names[i]);
+                    for (int j = 0; j < tokenCounts[i - start]; j++) {
+                        String term = tokens.get(token++);
+                        Postings list = postings.get(term);
+                        if (list == null) {
+                            list = new Postings();
+                            postings.put(term, list);
+                        }
+                        list.add(id);
+                    }
+                }
+            }
+        }
+    }
+
+    private int addEntry(int channel, long startTime, String name) {
+        if (entryCount == entryChannels.length) {
+            int capacity = entryCount * 2;
+            entryChannels = Arrays.copyOf(entryChannels, capacity);
+            entryStartTimes = Arrays.copyOf(entryStartTimes, capacity);
+            entryNames = Arrays.copyOf(entryNames, capacity);
+        }
+
+        entryChannels[entryCount] = channel;
+        entryStartTimes[entryCount] = startTime;
+        entryNames[entryCount] = name;
+        return entryCount++;
+    }
+
+    private void addResult(List<Result> results, List<ArrayList<Postings>> termPostings,
+                           int skip, int id) {
+
+        if (matchesAll(termPostings, skip, id)
+                && !containsProgram(results, entryChannels[id], entryStartTimes[id])) {
+            results.add(new Result(entryChannels[id], entryStartTimes[id], entryNames[id]));
+        }
+    }
+
+    private static boolean matchesAll(List<ArrayList<Postings>> termPostings, int skip, int id) {
+        for (int i = 0; i < termPostings.size(); i++) {
+            if (i == skip) continue;
+
+            boolean found = false;
+            ArrayList<Postings> lists = termPostings.get(i);
+            for (int j = 0; j < lists.size() && !found; j++) {
+                Postings list = lists.get(j);
+                found = Arrays.binarySearch(list.ids, 0, list.count, id) >= 0;
+            }
+
+            if (!found) return false;
+        }
+
+        return true;
+    }
+
+    private static boolean containsProgram(List<Result> results, int channel, long startTime) {
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            if (result.channel == channel && result.startTime == startTime) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Split a text into lower case words without accents.
+     */
+    static void tokenize(String text, List<String> tokens) {
+        if (text == null) return;
+
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK && token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+
+        if (token.length() > 0) tokens.add(token.toString());
+    }
+}
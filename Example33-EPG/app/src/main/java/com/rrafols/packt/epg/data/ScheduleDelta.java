@@ -0,0 +1,67 @@
+package com.rrafols.packt.epg.data;
+
+/**
+ * Incremental change to the schedule of a channel. Programs are identified by the channel
+ * position and their start time, as a channel cannot broadcast two programs starting at the
+ * same time.
+ */
+public class ScheduleDelta {
+    public static final int INSERT = 0;
+    public static final int UPDATE = 1;
+    public static final int DELETE = 2;
+
+    private final int type;
+    private final int channel;
+    private final long startTime;
+    private final Program program;
+
+    private ScheduleDelta(int type, int channel, long startTime, Program program) {
+        this.type = type;
+        this.channel = channel;
+        this.startTime = startTime;
+        this.program = program;
+    }
+
+    /**
+     * Add a program to the channel. If the channel already has a program starting at the
+     * same time it is replaced, as with an update.
+     */
+    public static ScheduleDelta insert(int channel, Program program) {
+        return new ScheduleDelta(INSERT, channel, program.getStartTime(), program);
+    }
+
+    /**
+     * Replace the program starting at startTime. The new program might have a different start
+     * time, for instance if it has been moved, or end time if it overruns.
+     */
+    public static ScheduleDelta update(int channel, long startTime, Program program) {
+        return new ScheduleDelta(UPDATE, channel, startTime, program);
+    }
+
+    public static ScheduleDelta delete(int channel, long startTime) {
+        return new ScheduleDelta(DELETE, channel, startTime, null);
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getChannel() {
+        return channel;
+    }
+
+    /**
+     * Start time identifying the program to change, or the start time of the new program
+     * when inserting.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * New program values, null when deleting.
+     */
+    public Program getProgram() {
+        return program;
+    }
+}
@@ -0,0 +1,82 @@
+package com.rrafols.packt.epg.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Deduplicated table of strings. Program names and descriptions repeat a lot across
+ * channels and days, so columnar channels store an int identifier instead of a reference
+ * to its own String instance. A single table is meant to be shared by all the channels.
+ */
+public class StringTable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final HashMap<String, Integer> ids;
+
+    // append only, when it grows a new array is allocated so arrays returned by getStrings()
+    // keep being valid for all the identifiers issued before
+    private String[] strings;
+    private int count;
+
+    public StringTable() {
+        ids = new HashMap<>();
+        strings = new String[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Return the identifier of the given string, adding it to the table if it is not there yet.
+     * null is stored as -1.
+     */
+    public int add(String string) {
+        if (string == null) return -1;
+
+        Integer id = ids.get(string);
+        if (id == null) {
+            if (count == strings.length) {
+                strings = Arrays.copyOf(strings, count * 2);
+            }
+
+            id = count;
+            strings[count++] = string;
+            ids.put(string, id);
+        }
+
+        return id;
+    }
+
+    public String get(int id) {
+        if (id == -1) return null;
+        return strings[id];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Return the array backing the table. Strings already in the table never change their
+     * position, so it can be used to resolve any identifier issued so far, even if more
+     * strings are added later on.
+     */
+    String[] getStrings() {
+        return strings;
+    }
+
+    /**
+     * Approximate heap footprint, in bytes, of the strings and lookup structures of this table.
+     */
+    public long estimateMemoryUsage() {
+        // every HashMap entry has a header, hash, key, value and next references plus the
+        // boxed Integer and the bucket array slot
+        final int entrySize = 32 + 16 + MemoryEstimate.REFERENCE_SIZE;
+
+        long size = MemoryEstimate.arraySize(strings.length, MemoryEstimate.REFERENCE_SIZE)
+                + (long) count * entrySize;
+
+        for (int i = 0; i < count; i++) {
+            size += MemoryEstimate.stringSize(strings[i]);
+        }
+
+        return size;
+    }
+}
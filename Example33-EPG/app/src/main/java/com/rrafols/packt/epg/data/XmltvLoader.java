@@ -0,0 +1,381 @@
+package com.rrafols.packt.epg.data;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Streaming XMLTV loader. The file is parsed with a pull parser on a background thread and
+ * programs are handed to the UI thread in small batches, so the guide can be shown as soon
+ * as the visible window has been loaded. Once the requested window is covered the parser
+ * pauses until more data is requested with requestWindow.
+ *
+ * All channel modifications and listener callbacks happen on the main thread.
+ */
+public class XmltvLoader {
+    private static final int MAX_BATCH_SIZE = 512;
+
+    public interface Listener {
+        /**
+         * Called once all the channel declarations have been parsed. Channels have no
+         * programs yet.
+         */
+        void onChannelsLoaded(Channel[] channels);
+
+        /**
+         * Called every time a batch of programs has been added to the channels.
+         */
+        void onWindowLoaded(int firstChannel, int lastChannel, long startTime, long endTime);
+
+        void onLoadFinished();
+
+        void onLoadFailed(Exception e);
+    }
+
+    private final InputStream input;
+    private final Listener listener;
+    private final Handler handler;
+    private final Object lock;
+    private final StringTable stringTable;
+
+    private Thread thread;
+    private volatile boolean cancelled;
+    private long timeShift;
+    private ProgramSearchIndex searchIndex;
+
+    // guarded by lock
+    private int requestedChannel;
+    private long requestedEndTime;
+
+    // only accessed by the loader thread
+    private Channel[] channels;
+    private long[] loadedUntil;
+    private Batch batch;
+
+    public XmltvLoader(InputStream input, Listener listener) {
+        this.input = input;
+        this.listener = listener;
+
+        handler = new Handler(Looper.getMainLooper());
+        lock = new Object();
+        stringTable = new StringTable();
+        requestedChannel = -1;
+        requestedEndTime = Long.MIN_VALUE;
+        batch = new Batch();
+    }
+
+    /**
+     * Shift all program times by the given amount. Useful to show fixtures recorded at a
+     * fixed date around the current time.
+     */
+    public void setTimeShift(long timeShift) {
+        this.timeShift = timeShift;
+    }
+
+    /**
+     * Index the programs in the given search index as they are parsed.
+     */
+    public void setSearchIndex(ProgramSearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    public void start() {
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        }, "XmltvLoader");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Ask the loader to keep parsing until channels 0 to lastChannel have programs loaded
+     * at least up to endTime.
+     */
+    public void requestWindow(int lastChannel, long endTime) {
+        synchronized (lock) {
+            requestedChannel = Math.max(requestedChannel, lastChannel);
+            requestedEndTime = Math.max(requestedEndTime, endTime);
+            lock.notifyAll();
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    private void load() {
+        try {
+            XmlPullParser parser = Xml.newPullParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+            parser.setInput(input, null);
+
+            HashMap<String, Integer> channelIds = new HashMap<>();
+            Channel[] parsedChannels = new Channel[64];
+            int channelCount = 0;
+
+            int eventType = parser.getEventType();
+            while (eventType != XmlPullParser.END_DOCUMENT && !cancelled) {
+                if (eventType == XmlPullParser.START_TAG) {
+                    if ("channel".equals(parser.getName())) {
+                        String id = parser.getAttributeValue(null, "id");
+                        if (channelCount == parsedChannels.length) {
+                            parsedChannels = Arrays.copyOf(parsedChannels, channelCount * 2);
+                        }
+
+                        parsedChannels[channelCount] = parseChannel(parser);
+                        channelIds.put(id, channelCount);
+                        channelCount++;
+                    } else if ("programme".equals(parser.getName())) {
+                        if (channels == null) {
+                            publishChannels(Arrays.copyOf(parsedChannels, channelCount));
+                        }
+
+                        Integer channel = channelIds.get(parser.getAttributeValue(null, "channel"));
+                        if (channel != null) {
+                            parseProgramme(parser, channel);
+                        }
+                    }
+                }
+                eventType = parser.next();
+            }
+
+            if (channels == null) {
+                publishChannels(Arrays.copyOf(parsedChannels, channelCount));
+            }
+            publishBatch();
+
+            if (!cancelled) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onLoadFinished();
+                    }
+                });
+            }
+        } catch (final XmlPullParserException | IOException | InterruptedException e) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onLoadFailed(e);
+                }
+            });
+        } finally {
+            try {
+                input.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    private Channel parseChannel(XmlPullParser parser) throws XmlPullParserException, IOException {
+        String name = null;
+        String iconUrl = null;
+
+        int depth = parser.getDepth();
+        int eventType = parser.next();
+        while (!(eventType == XmlPullParser.END_TAG && parser.getDepth() == depth)) {
+            if (eventType == XmlPullParser.START_TAG) {
+                if ("display-name".equals(parser.getName()) && name == null) {
+                    name = parser.nextText();
+                } else if ("icon".equals(parser.getName())) {
+                    iconUrl = parser.getAttributeValue(null, "src");
+                }
+            }
+            eventType = parser.next();
+        }
+
+        return new ColumnarChannel(name, iconUrl, stringTable);
+    }
+
+    private void parseProgramme(XmlPullParser parser, int channel)
+            throws XmlPullParserException, IOException, InterruptedException {
+
+        long startTime = parseTime(parser.getAttributeValue(null, "start"));
+        long endTime = parseTime(parser.getAttributeValue(null, "stop"));
+        String title = null;
+        String description = null;
+
+        int depth = parser.getDepth();
+        int eventType = parser.next();
+        while (!(eventType == XmlPullParser.END_TAG && parser.getDepth() == depth)) {
+            if (eventType == XmlPullParser.START_TAG) {
+                if ("title".equals(parser.getName()) && title == null) {
+                    title = parser.nextText();
+                } else if ("desc".equals(parser.getName()) && description == null) {
+                    description = parser.nextText();
+                }
+            }
+            eventType = parser.next();
+        }
+
+        // stop is optional, programs without it are ignored
+        if (startTime == Long.MIN_VALUE || endTime == Long.MIN_VALUE) return;
+
+        // a new channel starts, the previous one is complete up to its last program
+        if (batch.count > 0 && batch.channels[batch.count - 1] != channel) {
+            publishBatch();
+            waitForRequests();
+        }
+
+        batch.add(channel, title, description, startTime + timeShift, endTime + timeShift);
+        loadedUntil[channel] = Math.max(loadedUntil[channel], endTime + timeShift);
+        if (searchIndex != null) searchIndex.add(channel, title, description, startTime + timeShift);
+
+        if (batch.count == MAX_BATCH_SIZE) {
+            publishBatch();
+            waitForRequests();
+        }
+    }
+
+    private void publishChannels(final Channel[] channels) {
+        this.channels = channels;
+        loadedUntil = new long[channels.length];
+        Arrays.fill(loadedUntil, Long.MIN_VALUE);
+
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onChannelsLoaded(channels);
+            }
+        });
+    }
+
+    /**
+     * Hand the pending programs to the UI thread.
+     */
+    private void publishBatch() {
+        if (batch.count > 0) {
+            final Batch pending = batch;
+            batch = new Batch();
+
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (cancelled) return;
+
+                    pending.addTo(channels);
+                    listener.onWindowLoaded(pending.firstChannel, pending.lastChannel,
+                            pending.startTime, pending.endTime);
+                }
+            });
+        }
+    }
+
+    /**
+     * Pause parsing while the requested window is already loaded.
+     */
+    private void waitForRequests() throws InterruptedException {
+        synchronized (lock) {
+            while (!cancelled && isRequestedWindowLoaded()) {
+                lock.wait();
+            }
+        }
+    }
+
+    private boolean isRequestedWindowLoaded() {
+        int lastChannel = Math.min(requestedChannel, channels.length - 1);
+        for (int i = 0; i <= lastChannel; i++) {
+            if (loadedUntil[i] < requestedEndTime) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Parse a XMLTV timestamp, "yyyyMMddHHmmss +HHmm". Seconds and time zone are optional.
+     *
+     * @return the timestamp in milliseconds or Long.MIN_VALUE if it cannot be parsed
+     */
+    static long parseTime(String text) {
+        if (text == null || text.length() < 12) return Long.MIN_VALUE;
+
+        try {
+            int year = Integer.parseInt(text.substring(0, 4));
+            int month = Integer.parseInt(text.substring(4, 6));
+            int day = Integer.parseInt(text.substring(6, 8));
+            int hour = Integer.parseInt(text.substring(8, 10));
+            int minute = Integer.parseInt(text.substring(10, 12));
+            int second = 0;
+            if (text.length() >= 14 && Character.isDigit(text.charAt(12))) {
+                second = Integer.parseInt(text.substring(12, 14));
+            }
+
+            long offsetMinutes = 0;
+            int sign = Math.max(text.indexOf('+'), text.indexOf('-'));
+            if (sign != -1 && text.length() >= sign + 5) {
+                offsetMinutes = Integer.parseInt(text.substring(sign + 1, sign + 3)) * 60
+                        + Integer.parseInt(text.substring(sign + 3, sign + 5));
+                if (text.charAt(sign) == '-') offsetMinutes = -offsetMinutes;
+            }
+
+            long days = daysFromCivil(year, month, day);
+            long seconds = days * 86400 + hour * 3600 + minute * 60 + second - offsetMinutes * 60;
+            return seconds * 1000;
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Number of days since 1970-01-01 of a proleptic Gregorian date.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Programs parsed but not yet added to the channels.
+     */
+    private static class Batch {
+        private int[] channels = new int[MAX_BATCH_SIZE];
+        private String[] names = new String[MAX_BATCH_SIZE];
+        private String[] descriptions = new String[MAX_BATCH_SIZE];
+        private long[] startTimes = new long[MAX_BATCH_SIZE];
+        private long[] endTimes = new long[MAX_BATCH_SIZE];
+        private int count;
+        private int firstChannel = Integer.MAX_VALUE;
+        private int lastChannel = -1;
+        private long startTime = Long.MAX_VALUE;
+        private long endTime = Long.MIN_VALUE;
+
+        void add(int channel, String name, String description, long startTime, long endTime) {
+            channels[count] = channel;
+            names[count] = name;
+            descriptions[count] = description;
+            startTimes[count] = startTime;
+            endTimes[count] = endTime;
+            count++;
+
+            firstChannel = Math.min(firstChannel, channel);
+            lastChannel = Math.max(lastChannel, channel);
+            this.startTime = Math.min(this.startTime, startTime);
+            this.endTime = Math.max(this.endTime, endTime);
+        }
+
+        void addTo(Channel[] channelList) {
+            for (int i = 0; i < count; i++) {
+                channelList[channels[i]].addProgram(names[i], descriptions[i], startTimes[i], endTimes[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.rrafols.packt.epg.util;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size cache of strings keyed by a primitive long, using open addressing with a
+ * bounded number of probes. When all probed slots are taken the entry at the home slot is
+ * replaced, so memory usage never grows and keys are never boxed.
+ *
+ * This class is not thread safe.
+ */
+public class LongStringCache {
+    private static final int MAX_PROBES = 8;
+
+    private final long[] keys;
+    private final String[] values;
+    private final int mask;
+    private int size;
+    private int evictions;
+
+    /**
+     * @param capacity maximum number of entries, rounded up to the next power of two
+     */
+    public LongStringCache(int capacity) {
+        int tableSize = Integer.highestOneBit(Math.max(MAX_PROBES, capacity) - 1) << 1;
+        keys = new long[tableSize];
+        values = new String[tableSize];
+        mask = tableSize - 1;
+    }
+
+    public String get(long key) {
+        int slot = hash(key);
+        for (int i = 0; i < MAX_PROBES; i++) {
+            String value = values[slot];
+            if (value == null) return null;
+            if (keys[slot] == key) return value;
+
+            slot = (slot + 1) & mask;
+        }
+
+        return null;
+    }
+
+    public void put(long key, String value) {
+        int home = hash(key);
+        int slot = home;
+        for (int i = 0; i < MAX_PROBES; i++) {
+            if (values[slot] == null) {
+                size++;
+                break;
+            }
+            if (keys[slot] == key) break;
+
+            slot = (slot + 1) & mask;
+            if (i == MAX_PROBES - 1) {
+                // no free slot in the probe window, evict the entry on the home slot
+                slot = home;
+                evictions++;
+            }
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public int getEvictionCount() {
+        return evictions;
+    }
+
+    private int hash(long key) {
+        // mix the bits, consecutive timestamps only differ on a few low bits
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,198 @@
+package com.rrafols.packt.epg.util;
+
+import java.util.TimeZone;
+
+/**
+ * Shared formatter of local times as "HH:mm" and "HH:mm:ss" texts. The same start and end
+ * times repeat a lot across channels, so formatted strings are kept in bounded caches keyed
+ * by minute or second. Digits are written directly into a char buffer per cache, reused while
+ * holding its lock, instead of going through SimpleDateFormat and Date.
+ *
+ * The shared instance starts with the default time zone. Reading the default zone allocates
+ * a copy every time, so it is not checked on every call. Instead, setTimeZone() has to be
+ * called when the device zone changes, and it discards every cached text.
+ *
+ * This class is thread safe.
+ */
+public class TimeTextFormatter {
+    private static final long SECOND = 1000;
+    private static final long DAY = 24 * 60 * 60 * SECOND;
+    private static final int CACHE_SIZE = 1024;
+
+    // range keys are the start second shifted left and the duration in seconds, ranges longer
+    // than that are not cached
+    private static final int DURATION_BITS = 24;
+    private static final long MAX_CACHED_DURATION = (1L << DURATION_BITS) - 1;
+
+    public static final int SHORT_TIME_LENGTH = 5;
+    public static final int TIME_LENGTH = 8;
+    public static final int TIME_RANGE_LENGTH = TIME_LENGTH * 2 + 3;
+
+    private static TimeTextFormatter instance;
+
+    private volatile TimeZone timeZone;
+    private final LongStringCache shortTimes;
+    private final LongStringCache times;
+    private final LongStringCache timeRanges;
+
+    // guarded by the lock of the cache they fill
+    private final char[] shortTimeBuffer;
+    private final char[] timeBuffer;
+    private final char[] timeRangeBuffer;
+
+    public static synchronized TimeTextFormatter getInstance() {
+        if (instance == null) {
+            instance = new TimeTextFormatter(TimeZone.getDefault());
+        }
+
+        return instance;
+    }
+
+    public TimeTextFormatter(TimeZone timeZone) {
+        this.timeZone = timeZone;
+
+        shortTimes = new LongStringCache(CACHE_SIZE);
+        times = new LongStringCache(CACHE_SIZE);
+        timeRanges = new LongStringCache(CACHE_SIZE);
+
+        shortTimeBuffer = new char[SHORT_TIME_LENGTH];
+        timeBuffer = new char[TIME_LENGTH];
+        timeRangeBuffer = new char[TIME_RANGE_LENGTH];
+    }
+
+    public TimeZone getTimeZone() {
+        return timeZone;
+    }
+
+    /**
+     * Format times in another time zone from now on, discarding the texts already cached if
+     * it has another ID.
+     */
+    public void setTimeZone(TimeZone timeZone) {
+        if (timeZone.getID().equals(this.timeZone.getID())) return;
+
+        // texts being formatted with the previous zone are put before the caches are cleared
+        this.timeZone = timeZone;
+        synchronized (shortTimes) {
+            shortTimes.clear();
+        }
+        synchronized (times) {
+            times.clear();
+        }
+        synchronized (timeRanges) {
+            timeRanges.clear();
+        }
+    }
+
+    /**
+     * Return the given time as "HH:mm".
+     */
+    public String getShortTimeText(long time) {
+        long minute = floorDiv(time, 60 * SECOND);
+        synchronized (shortTimes) {
+            String text = shortTimes.get(minute);
+            if (text == null) {
+                formatShortTime(time, shortTimeBuffer, 0);
+                text = new String(shortTimeBuffer);
+                shortTimes.put(minute, text);
+            }
+
+            return text;
+        }
+    }
+
+    /**
+     * Return the given time as "HH:mm:ss".
+     */
+    public String getTimeText(long time) {
+        long second = floorDiv(time, SECOND);
+        synchronized (times) {
+            String text = times.get(second);
+            if (text == null) {
+                formatTime(time, timeBuffer, 0);
+                text = new String(timeBuffer);
+                times.put(second, text);
+            }
+
+            return text;
+        }
+    }
+
+    /**
+     * Return the given range as "HH:mm:ss - HH:mm:ss".
+     */
+    public String getTimeRangeText(long startTime, long endTime) {
+        long duration = floorDiv(endTime, SECOND) - floorDiv(startTime, SECOND);
+        boolean cacheable = duration >= 0 && duration <= MAX_CACHED_DURATION;
+        long key = (floorDiv(startTime, SECOND) << DURATION_BITS) | duration;
+
+        synchronized (timeRanges) {
+            String text = cacheable ? timeRanges.get(key) : null;
+            if (text == null) {
+                formatTimeRange(startTime, endTime, timeRangeBuffer, 0);
+                text = new String(timeRangeBuffer);
+                if (cacheable) timeRanges.put(key, text);
+            }
+
+            return text;
+        }
+    }
+
+    /**
+     * Write the given time as "HH:mm" into buffer, it does not allocate any memory.
+     *
+     * @return the number of chars written, SHORT_TIME_LENGTH
+     */
+    public int formatShortTime(long time, char[] buffer, int offset) {
+        int seconds = getSecondOfDay(time);
+        writeTwoDigits(seconds / 3600, buffer, offset);
+        buffer[offset + 2] = ':';
+        writeTwoDigits(seconds / 60 % 60, buffer, offset + 3);
+        return SHORT_TIME_LENGTH;
+    }
+
+    /**
+     * Write the given time as "HH:mm:ss" into buffer, it does not allocate any memory.
+     *
+     * @return the number of chars written, TIME_LENGTH
+     */
+    public int formatTime(long time, char[] buffer, int offset) {
+        int length = formatShortTime(time, buffer, offset);
+        buffer[offset + length] = ':';
+        writeTwoDigits(getSecondOfDay(time) % 60, buffer, offset + length + 1);
+        return TIME_LENGTH;
+    }
+
+    /**
+     * Write the given range as "HH:mm:ss - HH:mm:ss" into buffer, it does not allocate any
+     * memory.
+     *
+     * @return the number of chars written, TIME_RANGE_LENGTH
+     */
+    public int formatTimeRange(long startTime, long endTime, char[] buffer, int offset) {
+        int length = formatTime(startTime, buffer, offset);
+        buffer[offset + length] = ' ';
+        buffer[offset + length + 1] = '-';
+        buffer[offset + length + 2] = ' ';
+        formatTime(endTime, buffer, offset + length + 3);
+        return TIME_RANGE_LENGTH;
+    }
+
+    private int getSecondOfDay(long time) {
+        long localTime = time + timeZone.getOffset(time);
+        long timeOfDay = localTime % DAY;
+        if (timeOfDay < 0) timeOfDay += DAY;
+        return (int) (timeOfDay / SECOND);
+    }
+
+    // Math.floorDiv is only available from API level 24
+    private static long floorDiv(long value, long divisor) {
+        long quotient = value / divisor;
+        return value < 0 && quotient * divisor != value ? quotient - 1 : quotient;
+    }
+
+    private static void writeTwoDigits(int value, char[] buffer, int offset) {
+        buffer[offset] = (char) ('0' + value / 10);
+        buffer[offset + 1] = (char) ('0' + value % 10);
+    }
+}
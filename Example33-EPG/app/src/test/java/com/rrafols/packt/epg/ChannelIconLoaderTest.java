@@ -0,0 +1,281 @@
+package com.rrafols.packt.epg;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import com.rrafols.packt.epg.data.Channel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Loads channel icons from a temporary directory through a {@link FileIconFetcher}, which
+ * delivers its results on the main looper. The looper is paused so results are only
+ * delivered, on the test thread, when waiting.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class ChannelIconLoaderTest {
+    private static final String URL = "http://example.com/logos/";
+    private static final int LOGO_SIZE = 16;
+    private static final long TIMEOUT = 10 * 1000;
+
+    /**
+     * Forwards to a {@link FileIconFetcher} counting the requests and the results delivered.
+     */
+    private static class CountingFetcher implements IconFetcher, IconFetcher.Callback {
+        private final FileIconFetcher fetcher;
+        private final HashMap<String, Integer> fetches = new HashMap<>();
+        private Callback callback;
+        private int cancels;
+        private int results;
+
+        CountingFetcher(File directory) {
+            fetcher = new FileIconFetcher(directory);
+        }
+
+        @Override
+        public void fetch(String url, int targetSize, Callback callback) {
+            this.callback = callback;
+            fetches.put(url, getFetchCount(url) + 1);
+            fetcher.fetch(url, targetSize, this);
+        }
+
+        @Override
+        public void cancel(String url) {
+            cancels++;
+            fetcher.cancel(url);
+        }
+
+        @Override
+        public void onIconLoaded(String url, Bitmap bitmap) {
+            results++;
+            callback.onIconLoaded(url, bitmap);
+        }
+
+        @Override
+        public void onIconFailed(String url) {
+            results++;
+            callback.onIconFailed(url);
+        }
+
+        int getFetchCount(String url) {
+            Integer count = fetches.get(url);
+            return count != null ? count : 0;
+        }
+
+        int getFetchCount() {
+            int count = 0;
+            for (int fetchCount : fetches.values()) count += fetchCount;
+            return count;
+        }
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+    private File directory;
+    private CountingFetcher fetcher;
+    private ChannelLogoCache logoCache;
+    private ChannelIconLoader loader;
+    private int loaded;
+
+    @Before
+    public void setUp() throws IOException {
+        ShadowLooper.pauseMainLooper();
+
+        directory = File.createTempFile("logos", "");
+        assertTrue(directory.delete() && directory.mkdir());
+
+        fetcher = new CountingFetcher(directory);
+        logoCache = new ChannelLogoCache(1024 * 1024, LOGO_SIZE);
+        loader = new ChannelIconLoader(fetcher, logoCache, new ChannelIconLoader.Listener() {
+            @Override
+            public void onIconLoaded() {
+                loaded++;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        fetcher.fetcher.shutdown();
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void requestsEachUrlOnce() throws IOException {
+        // channels alternate between two logos
+        writeLogos(2);
+        loader.setChannels(createChannels(10, 2));
+
+        loader.update(0, 9, 0);
+        assertEquals(2, loader.getPendingRequestCount());
+        assertEquals(1, fetcher.getFetchCount(url(0)));
+        assertEquals(1, fetcher.getFetchCount(url(1)));
+
+        loader.update(0, 4, 0);
+        assertEquals(2, fetcher.getFetchCount());
+
+        waitForRequests();
+        assertEquals(2, loaded);
+        assertTrue(logoCache.contains(url(0)));
+        assertTrue(logoCache.contains(url(1)));
+
+        // cached logos are not requested again
+        loader.update(1, 9, 0);
+        assertEquals(2, fetcher.getFetchCount());
+        assertEquals(0, loader.getPendingRequestCount());
+    }
+
+    @Test
+    public void cancelsRequestsScrolledAway() throws IOException {
+        writeLogos(100);
+        loader.setChannels(createChannels(100, 100));
+
+        // visible channels and the next page
+        loader.update(0, 9, 1);
+        assertEquals(20, fetcher.getFetchCount());
+
+        // keeps the requests two pages around the visible channels
+        loader.update(60, 69, 1);
+        assertEquals(40, fetcher.getFetchCount());
+        assertEquals(20, fetcher.cancels);
+        assertEquals(20, loader.getPendingRequestCount());
+
+        waitForRequests();
+        sleep(100);
+        ShadowLooper.runUiThreadTasks();
+
+        // results of the cancelled requests are never delivered
+        assertEquals(20, fetcher.results);
+        assertEquals(20, loaded);
+        for (int i = 0; i < 20; i++) {
+            assertFalse(logoCache.contains(url(i)));
+        }
+        for (int i = 60; i < 80; i++) {
+            assertTrue(logoCache.contains(url(i)));
+        }
+    }
+
+    @Test
+    public void retriesFailedIcons() throws IOException {
+        // the logo file is missing on the first request
+        loader.setChannels(createChannels(1, 1));
+        loader.update(0, 0, 0);
+        waitForRequests();
+        assertEquals(1, fetcher.results);
+        assertEquals(0, loaded);
+
+        writeLogos(1);
+        SystemClock.sleep(ChannelIconLoader.RETRY_DELAY / 2);
+        loader.update(0, 0, 0);
+        assertEquals(1, fetcher.getFetchCount());
+
+        // retried on the next update once the delay has passed, the visible range is the same
+        SystemClock.sleep(ChannelIconLoader.RETRY_DELAY / 2);
+        loader.update(0, 0, 0);
+        assertEquals(2, fetcher.getFetchCount());
+
+        waitForRequests();
+        assertEquals(1, loaded);
+        assertTrue(logoCache.contains(url(0)));
+    }
+
+    @Test
+    public void requestsEvictedLogosAgain() throws IOException {
+        writeLogos(2);
+        loader.setChannels(createChannels(2, 2));
+        loader.update(0, 1, 0);
+        waitForRequests();
+        assertEquals(2, loaded);
+
+        loader.update(0, 1, 0);
+        assertEquals(2, fetcher.getFetchCount());
+
+        logoCache.clear();
+        loader.update(0, 1, 0);
+        assertEquals(4, fetcher.getFetchCount());
+
+        waitForRequests();
+        assertEquals(4, loaded);
+        assertTrue(logoCache.contains(url(0)));
+        assertTrue(logoCache.contains(url(1)));
+    }
+
+    private static String url(int logo) {
+        return URL + logo + ".png";
+    }
+
+    private static Channel[] createChannels(int count, int logos) {
+        Channel[] channels = new Channel[count];
+        for (int i = 0; i < count; i++) {
+            channels[i] = new Channel("Channel " + i, url(i % logos));
+        }
+        return channels;
+    }
+
+    private void writeLogos(int count) throws IOException {
+        Bitmap logo = Bitmap.createBitmap(LOGO_SIZE * 2, LOGO_SIZE * 2, Bitmap.Config.ARGB_8888);
+        for (int i = 0; i < count; i++) {
+            OutputStream output = new FileOutputStream(new File(directory, i + ".png"));
+            try {
+                logo.compress(Bitmap.CompressFormat.PNG, 100, output);
+            } finally {
+                output.close();
+            }
+        }
+    }
+
+    /**
+     * Deliver the results posted by the fetcher until no request is pending.
+     */
+    private void waitForRequests() {
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return loader.getPendingRequestCount() == 0;
+            }
+        });
+    }
+
+    private void waitFor(Condition condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (true) {
+            ShadowLooper.runUiThreadTasks();
+            if (condition.isMet()) return;
+
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            sleep(10);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
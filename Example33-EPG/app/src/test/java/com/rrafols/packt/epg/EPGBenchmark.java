@@ -0,0 +1,322 @@
+package com.rrafols.packt.epg;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Picture;
+
+import com.rrafols.packt.epg.data.Channel;
+import com.rrafols.packt.epg.data.Program;
+import com.rrafols.packt.epg.data.ProgramIndex;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drawing benchmark of the EPG view running on the JVM. Full frames are drawn into a canvas
+ * that only counts draw operations, over synthetic guides of different sizes with every
+ * render mode, jumping across the guide and scrolling a bit from every position, at several
+ * zoom levels. It reports the time, draw operations and bytes allocated per frame and fails
+ * if the cost of a frame depends on the size of the guide.
+ *
+ * Snapshots are built on the test thread between frames, outside of the measured time, as
+ * the builder thread would do. Tiles and display lists are rasterized through Robolectric's
+ * shadow canvas, which allocates on every call unlike the platform one, so allocations are
+ * only gated for the modes drawing straight on the view canvas.
+ *
+ * Absolute times depend on the machine and on Robolectric, compare them between runs on the
+ * same machine only. Times are too noisy on shared machines to gate on, they are reported
+ * with their ratio to the smallest guide but only draw operations and allocations can fail.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class EPGBenchmark {
+    private static final int[] CHANNEL_COUNTS = { 100, 1000, 5000 };
+    private static final int PROGRAMS_PER_CHANNEL = 2000;
+    private static final int[] ZOOM_LEVELS = { -16, 0, 32 };
+    private static final int[] RENDER_MODES = { EPG.RENDER_MODE_DIRECT, EPG.RENDER_MODE_TILES,
+            EPG.RENDER_MODE_DISPLAY_LIST, EPG.RENDER_MODE_SNAPSHOT };
+    private static final String[] RENDER_MODE_NAMES = { "direct", "tiles", "list", "snapshot" };
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int SCROLL_POSITIONS = 64;
+    private static final int FRAMES_PER_POSITION = 16;
+    private static final int WARMUP_FRAMES = 512;
+    private static final int MEASURED_FRAMES = 1024;
+
+    // channels share a few schedules, otherwise the biggest guide would not fit in memory
+    private static final int SCHEDULES = 16;
+    private static final long MINUTE = 60 * 1000;
+    private static final int DURATION_SLOTS = 8;
+    private static final int NAMES_PER_SLOT = 25;
+
+    // merge gates: bigger guides can be at most this much more expensive than the smallest
+    private static final float MAX_DRAW_OPS_RATIO = 1.1f;
+    private static final long MAX_ALLOCATED_BYTES_PER_FRAME = 4 * 1024;
+
+    private static class Result {
+        private double nanosPerFrame;
+        private double drawOpsPerFrame;
+        private double bytesPerFrame;
+        private long bodyP50;
+        private long timeBarP50;
+    }
+
+    @Test
+    public void drawFrames() {
+        long scheduleStart = (System.currentTimeMillis() / (30 * MINUTE) - 4) * 30 * MINUTE;
+        ProgramIndex[] schedules = buildSchedules(scheduleStart);
+
+        System.out.println(String.format(Locale.US, "%-8s %-8s %-5s %12s %10s %10s %12s %10s %10s",
+                "mode", "channels", "zoom", "ns/frame", "time x", "ops/frame", "bytes/frame",
+                "body us", "bar us"));
+
+        for (int mode = 0; mode < RENDER_MODES.length; mode++) {
+            int renderMode = RENDER_MODES[mode];
+            boolean gateAllocations = renderMode == EPG.RENDER_MODE_DIRECT
+                    || renderMode == EPG.RENDER_MODE_SNAPSHOT;
+
+            for (int zoomLevel : ZOOM_LEVELS) {
+                Result baseline = null;
+                for (int channels : CHANNEL_COUNTS) {
+                    Result result = run(schedules, scheduleStart, channels, zoomLevel, renderMode);
+                    double timeRatio = baseline != null ?
+                            result.nanosPerFrame / baseline.nanosPerFrame : 1;
+                    System.out.println(String.format(Locale.US,
+                            "%-8s %-8d %-5d %12.0f %10.2f %10.1f %12.1f %10d %10d",
+                            RENDER_MODE_NAMES[mode], channels, zoomLevel, result.nanosPerFrame,
+                            timeRatio, result.drawOpsPerFrame, result.bytesPerFrame,
+                            result.bodyP50, result.timeBarP50));
+
+                    if (gateAllocations && result.bytesPerFrame >= 0) {
+                        assertTrue(RENDER_MODE_NAMES[mode] + " allocating " + result.bytesPerFrame
+                                        + " bytes per frame",
+                                result.bytesPerFrame <= MAX_ALLOCATED_BYTES_PER_FRAME);
+                    }
+
+                    if (baseline == null) {
+                        baseline = result;
+                    } else {
+                        assertTrue(RENDER_MODE_NAMES[mode] + " " + channels
+                                        + " channels draw ops per frame regression",
+                                result.drawOpsPerFrame <= baseline.drawOpsPerFrame * MAX_DRAW_OPS_RATIO);
+                    }
+                }
+            }
+        }
+    }
+
+    private Result run(ProgramIndex[] schedules, long scheduleStart, int channelCount,
+                       int zoomLevel, int renderMode) {
+        Channel[] channels = new Channel[channelCount];
+        for (int i = 0; i < channelCount; i++) {
+            channels[i] = new SyntheticChannel("channel " + i, schedules[i % SCHEDULES]);
+        }
+
+        EPG epg = new EPG(RuntimeEnvironment.application, null);
+        epg.setRenderMode(renderMode);
+        epg.layout(0, 0, WIDTH, HEIGHT);
+        epg.setChannelList(channels);
+        epg.setZoomLevel(zoomLevel);
+        epg.setFrameStatsEnabled(true);
+
+        RecordingCanvas canvas = new RecordingCanvas();
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            scrollTo(epg, i, channelCount, scheduleStart);
+            epg.onDraw(canvas);
+            epg.buildPendingSnapshot();
+        }
+
+        epg.getFrameStats().reset();
+        canvas.drawOps = 0;
+        long elapsed = 0;
+        long allocated = 0;
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            scrollTo(epg, i, channelCount, scheduleStart);
+
+            long allocatedBefore = getAllocatedBytes();
+            long start = System.nanoTime();
+            epg.onDraw(canvas);
+            elapsed += System.nanoTime() - start;
+            allocated += getAllocatedBytes() - allocatedBefore;
+
+            epg.buildPendingSnapshot();
+        }
+
+        FrameStats.Snapshot stats = epg.getFrameStats().snapshot();
+        Result result = new Result();
+        result.nanosPerFrame = (double) elapsed / MEASURED_FRAMES;
+        result.drawOpsPerFrame = (double) canvas.drawOps / MEASURED_FRAMES;
+        result.bytesPerFrame = getAllocatedBytes() < 0 ? -1 : (double) allocated / MEASURED_FRAMES;
+        result.bodyP50 = stats.getP50(FrameStats.PHASE_BODY);
+        result.timeBarP50 = stats.getP50(FrameStats.PHASE_TIME_BAR);
+        return result;
+    }
+
+    /**
+     * Jump to one of the swept scroll positions every FRAMES_PER_POSITION frames and scroll
+     * a few minutes further from it on the frames in between, so cached renderings are both
+     * rebuilt and reused.
+     */
+    private static void scrollTo(EPG epg, int frame, int channelCount, long scheduleStart) {
+        int position = (frame / FRAMES_PER_POSITION) % SCROLL_POSITIONS;
+        int step = frame % FRAMES_PER_POSITION;
+        int channel = (int) ((long) position * channelCount / SCROLL_POSITIONS);
+        long time = scheduleStart + position * 45 * MINUTE + step * 2 * MINUTE;
+
+        epg.scrollToProgram(channel, time, false);
+    }
+
+    /**
+     * Bytes allocated so far by the current thread or -1 if the JVM cannot tell.
+     */
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+            if (threadBean.isThreadAllocatedMemorySupported()) {
+                return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Build schedules of consecutive programs. Program names depend on the duration, so every
+     * name is always drawn at the same width for a given zoom level.
+     */
+    private static ProgramIndex[] buildSchedules(long scheduleStart) {
+        Random random = new Random(33);
+        ProgramIndex[] schedules = new ProgramIndex[SCHEDULES];
+        for (int i = 0; i < SCHEDULES; i++) {
+            long[] startTimes = new long[PROGRAMS_PER_CHANNEL];
+            long[] endTimes = new long[PROGRAMS_PER_CHANNEL];
+            String[] names = new String[PROGRAMS_PER_CHANNEL];
+
+            long time = scheduleStart;
+            for (int j = 0; j < PROGRAMS_PER_CHANNEL; j++) {
+                int slot = random.nextInt(DURATION_SLOTS);
+                startTimes[j] = time;
+                time += (slot + 1) * 15 * MINUTE;
+                endTimes[j] = time;
+                names[j] = "Program " + (slot * NAMES_PER_SLOT + random.nextInt(NAMES_PER_SLOT));
+            }
+
+            schedules[i] = new ProgramIndex(startTimes, endTimes, names, PROGRAMS_PER_CHANNEL);
+        }
+
+        return schedules;
+    }
+
+    /**
+     * Channel backed by an already built, shared, ProgramIndex.
+     */
+    private static class SyntheticChannel extends Channel {
+        private final ProgramIndex programIndex;
+
+        SyntheticChannel(String name, ProgramIndex programIndex) {
+            super(name, null);
+            this.programIndex = programIndex;
+        }
+
+        @Override
+        public ProgramIndex getProgramIndex() {
+            return programIndex;
+        }
+
+        @Override
+        public int getProgramCount() {
+            return programIndex.size();
+        }
+
+        @Override
+        public Program getProgram(int index) {
+            return new Program(programIndex.getName(index), null,
+                    programIndex.getStartTime(index), programIndex.getEndTime(index));
+        }
+
+        @Override
+        public String getProgramName(int index) {
+            return programIndex.getName(index);
+        }
+    }
+
+    /**
+     * Canvas stand-in counting draw operations without rasterizing anything.
+     */
+    private static class RecordingCanvas extends Canvas {
+        private long drawOps;
+        private int saveCount;
+
+        @Override
+        public boolean isHardwareAccelerated() {
+            return false;
+        }
+
+        @Override
+        public int save() {
+            return saveCount++;
+        }
+
+        @Override
+        public void restore() {
+            saveCount--;
+        }
+
+        @Override
+        public boolean clipRect(float left, float top, float right, float bottom) {
+            return true;
+        }
+
+        @Override
+        public void translate(float dx, float dy) {
+        }
+
+        @Override
+        public void drawARGB(int a, int r, int g, int b) {
+            drawOps++;
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+            drawOps++;
+        }
+
+        @Override
+        public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+            drawOps++;
+        }
+
+        @Override
+        public void drawPicture(Picture picture) {
+            drawOps++;
+        }
+
+        @Override
+        public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+            drawOps++;
+        }
+
+        @Override
+        public void drawRoundRect(float left, float top, float right, float bottom,
+                                  float rx, float ry, Paint paint) {
+            drawOps++;
+        }
+
+        @Override
+        public void drawText(String text, float x, float y, Paint paint) {
+            drawOps++;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.rrafols.packt.epg;
+
+import com.rrafols.packt.epg.data.Channel;
+import com.rrafols.packt.epg.data.Program;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reminders are identified by channel position and start time, so clicking a program twice
+ * cancels its reminder and a guide loaded again keeps the reminders set on the previous one.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class ReminderSchedulerTest {
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private ReminderScheduler scheduler;
+    private Channel[] channels;
+    private long startTime;
+
+    @Before
+    public void setUp() {
+        scheduler = new ReminderScheduler();
+        startTime = System.currentTimeMillis() + HOUR;
+        channels = createChannels();
+        scheduler.setChannels(channels);
+    }
+
+    @Test
+    public void secondRequestCancels() {
+        Program program = channels[1].getProgram(0);
+        assertTrue(scheduler.toggleReminder(channels[1], program));
+        assertTrue(scheduler.hasReminder(channels[1], program));
+
+        // another channel starting at the same time is a different reminder
+        assertFalse(scheduler.hasReminder(channels[0], channels[0].getProgram(0)));
+
+        assertFalse(scheduler.toggleReminder(channels[1], program));
+        assertFalse(scheduler.hasReminder(channels[1], program));
+
+        assertTrue(scheduler.toggleReminder(channels[1], program));
+        assertTrue(scheduler.hasReminder(channels[1], program));
+    }
+
+    @Test
+    public void ignoresStartedAndUnknownPrograms() {
+        Program started = new Program("Started", null, System.currentTimeMillis() - HOUR,
+                System.currentTimeMillis() + HOUR);
+        assertFalse(scheduler.toggleReminder(channels[0], started));
+        assertFalse(scheduler.hasReminder(channels[0], started));
+
+        Channel unknown = new Channel("Unknown", null);
+        Program program = new Program("Program", null, startTime, startTime + HOUR);
+        assertFalse(scheduler.toggleReminder(unknown, program));
+    }
+
+    @Test
+    public void keepsRemindersWhenChannelsAreLoadedAgain() {
+        assertTrue(scheduler.toggleReminder(channels[1], channels[1].getProgram(0)));
+
+        // the same guide loaded into new channel instances
+        Channel[] reloaded = createChannels();
+        scheduler.setChannels(reloaded);
+        assertTrue(scheduler.hasReminder(reloaded[1], reloaded[1].getProgram(0)));
+        assertFalse(scheduler.hasReminder(channels[1], channels[1].getProgram(0)));
+
+        assertFalse(scheduler.toggleReminder(reloaded[1], reloaded[1].getProgram(0)));
+        assertFalse(scheduler.hasReminder(reloaded[1], reloaded[1].getProgram(0)));
+    }
+
+    @Test
+    public void followsScheduleChanges() {
+        assertTrue(scheduler.toggleReminder(channels[1], channels[1].getProgram(0)));
+
+        // the program is delayed by half an hour
+        Program delayed = new Program("Program 1", null, startTime + HOUR / 2, startTime + HOUR);
+        scheduler.programUpdated(1, startTime, delayed);
+        assertFalse(scheduler.hasReminder(channels[1], channels[1].getProgram(0)));
+        assertTrue(scheduler.hasReminder(channels[1], delayed));
+
+        scheduler.programRemoved(1, delayed.getStartTime());
+        assertFalse(scheduler.hasReminder(channels[1], delayed));
+
+        // changes of programs without reminders are ignored
+        scheduler.programUpdated(0, startTime, delayed);
+        assertFalse(scheduler.hasReminder(channels[0], delayed));
+    }
+
+    private Channel[] createChannels() {
+        Channel[] channels = new Channel[2];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = new Channel("Channel " + i, null);
+            channels[i].addProgram("Program " + i, null, startTime, startTime + HOUR);
+        }
+        return channels;
+    }
+}
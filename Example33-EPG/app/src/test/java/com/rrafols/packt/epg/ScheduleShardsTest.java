@@ -0,0 +1,200 @@
+package com.rrafols.packt.epg;
+
+import com.rrafols.packt.epg.data.Channel;
+import com.rrafols.packt.epg.data.GuideSnapshot;
+import com.rrafols.packt.epg.data.ProgramIndex;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Days are requested around the visible range, evicted farthest first once the channels use
+ * more memory than allowed and requested again if the loader never reports them loaded.
+ */
+public class ScheduleShardsTest {
+    private static final long DAY = ScheduleShards.DAY;
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final int CHANNELS = 4;
+
+    // 2017-10-18 00:00:00 UTC
+    private static final long START = 1508284800000L;
+
+    private TimeZone defaultTimeZone;
+    private ArrayList<Long> requests;
+    private EPG.ShardLoader loader;
+
+    @Before
+    public void setUp() {
+        // days are local, make them start at midnight UTC
+        defaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+
+        requests = new ArrayList<>();
+        loader = new EPG.ShardLoader() {
+            @Override
+            public void loadShard(long startTime, long endTime) {
+                assertEquals(DAY, endTime - startTime);
+                requests.add(startTime);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    @Test
+    public void requestsDaysAroundVisibleRange() {
+        ScheduleShards shards = new ScheduleShards(loader, Long.MAX_VALUE);
+        shards.update(START + HOUR, START + 3 * HOUR, 0);
+        assertRequested(START - DAY, START, START + DAY);
+
+        // already requested
+        shards.update(START + 2 * HOUR, START + 4 * HOUR, 0);
+        assertRequested();
+
+        // visible range crossing midnight
+        shards.update(START + DAY + 23 * HOUR, START + 2 * DAY + HOUR, 0);
+        assertRequested(START + 2 * DAY, START + 3 * DAY);
+    }
+
+    @Test
+    public void evictsFarthestDays() {
+        long bytesPerDay = measureDays(1);
+        long maxBytes = measureDays(3) + bytesPerDay / 2;
+
+        ScheduleShards shards = new ScheduleShards(loader, maxBytes);
+        Channel[] channels = createChannels();
+        shards.update(START + HOUR, START + 2 * HOUR, 0);
+        for (long dayStart : takeRequests()) {
+            addDay(channels, dayStart);
+            assertFalse(shards.onShardLoaded(channels, dayStart, START + HOUR, START + 2 * HOUR));
+        }
+        assertEquals(3, shards.getLoadedShardCount());
+        assertTrue(shards.getResidentBytes() <= maxBytes);
+
+        // the next day is visible, the one after does not fit
+        long visibleStart = START + 2 * DAY + HOUR;
+        shards.update(visibleStart, visibleStart + HOUR, 0);
+        assertRequested(START + 2 * DAY);
+
+        addDay(channels, START + 2 * DAY);
+        assertTrue(shards.onShardLoaded(channels, START + 2 * DAY, visibleStart, visibleStart + HOUR));
+        assertEquals(3, shards.getLoadedShardCount());
+        assertTrue(shards.getResidentBytes() <= maxBytes);
+
+        for (Channel channel : channels) {
+            ProgramIndex index = channel.getProgramIndex();
+            assertEquals(24 * 3, index.size());
+            assertEquals(START, index.getStartTime(0));
+        }
+
+        // evicted days are requested again once visible, without prefetching if full
+        shards.update(START - DAY + HOUR, START - DAY + 2 * HOUR, 0);
+        assertRequested(START - DAY);
+    }
+
+    @Test
+    public void requestsShardsAgainAfterTimeout() {
+        ScheduleShards shards = new ScheduleShards(loader, Long.MAX_VALUE);
+        shards.update(START + HOUR, START + 2 * HOUR, 0);
+        assertRequested(START - DAY, START, START + DAY);
+
+        shards.update(START + HOUR, START + 2 * HOUR, ScheduleShards.LOAD_TIMEOUT - 1);
+        assertRequested();
+
+        Channel[] channels = createChannels();
+        addDay(channels, START);
+        shards.onShardLoaded(channels, START, START + HOUR, START + 2 * HOUR);
+
+        shards.update(START + HOUR, START + 2 * HOUR, ScheduleShards.LOAD_TIMEOUT);
+        assertRequested(START - DAY, START + DAY);
+
+        // timeout counted from the last request
+        shards.update(START + HOUR, START + 2 * HOUR, 2 * ScheduleShards.LOAD_TIMEOUT - 1);
+        assertRequested();
+    }
+
+    @Test
+    public void leavesSnapshotChannelsEncoded() throws IOException {
+        File file = File.createTempFile("guide", ".snapshot");
+        try {
+            Channel[] loaded = createChannels();
+            addDay(loaded, START);
+            String[] names = new String[CHANNELS];
+            ProgramIndex[] schedules = new ProgramIndex[CHANNELS];
+            String[][] descriptions = new String[CHANNELS][];
+            for (int i = 0; i < CHANNELS; i++) {
+                names[i] = loaded[i].getName();
+                schedules[i] = loaded[i].getProgramIndex();
+                descriptions[i] = new String[schedules[i].size()];
+            }
+            GuideSnapshot.write(names, new String[CHANNELS], schedules, descriptions, file);
+
+            Channel[] channels = GuideSnapshot.open(file).getChannels();
+            ScheduleShards shards = new ScheduleShards(loader, 1);
+            shards.update(START + DAY + HOUR, START + DAY + 2 * HOUR, 0);
+            assertFalse(shards.onShardLoaded(channels, START, START + DAY + HOUR,
+                    START + DAY + 2 * HOUR));
+
+            for (Channel channel : channels) {
+                assertFalse(channel.isLoaded());
+            }
+            assertEquals(0, shards.getResidentBytes());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static Channel[] createChannels() {
+        Channel[] channels = new Channel[CHANNELS];
+        for (int i = 0; i < CHANNELS; i++) {
+            channels[i] = new Channel("Channel " + i, null);
+        }
+        return channels;
+    }
+
+    private static void addDay(Channel[] channels, long dayStart) {
+        for (Channel channel : channels) {
+            for (int hour = 0; hour < 24; hour++) {
+                long startTime = dayStart + hour * HOUR;
+                channel.addProgram("Program " + hour, null, startTime, startTime + HOUR);
+            }
+        }
+    }
+
+    private static long measureDays(int days) {
+        Channel[] channels = createChannels();
+        long bytes = 0;
+        for (int i = 0; i < days; i++) addDay(channels, START + i * DAY);
+        for (Channel channel : channels) {
+            bytes += channel.estimateMemoryUsage();
+        }
+        return bytes;
+    }
+
+    private ArrayList<Long> takeRequests() {
+        ArrayList<Long> taken = new ArrayList<>(requests);
+        requests.clear();
+        return taken;
+    }
+
+    private void assertRequested(long... dayStarts) {
+        ArrayList<Long> taken = takeRequests();
+        assertEquals(dayStarts.length, taken.size());
+        for (long dayStart : dayStarts) {
+            assertTrue("missing " + dayStart, taken.contains(dayStart));
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.rrafols.packt.epg.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Guides written to a snapshot and opened back have to decode to the same channels and
+ * programs, and files from other versions or of other kinds have to be rejected.
+ */
+public class GuideSnapshotTest {
+    private static final long START = 1508284800000L;
+    private static final long MINUTE = 60 * 1000;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("guide", ".snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        String[] names = { "First", null, "Third" };
+        String[] iconUrls = { "http://example.com/first.png", null, "http://example.com/first.png" };
+        ProgramIndex[] schedules = {
+                schedule(new long[] { START, START + 30 * MINUTE, START + 90 * MINUTE },
+                        new long[] { START + 30 * MINUTE, START + 90 * MINUTE, START + 120 * MINUTE },
+                        new String[] { "News", null, "News" }),
+                schedule(new long[0], new long[0], new String[0]),
+
+                // overlapping programs, gaps from the previous end are negative
+                schedule(new long[] { START - 10 * MINUTE, START, START + 5 * MINUTE },
+                        new long[] { START + 60 * MINUTE, START + 20 * MINUTE, START + 10 * MINUTE },
+                        new String[] { "Long", "Short", "éè 日本" })
+        };
+
+        String[][] descriptions = {
+                { "Morning news", null, "Evening news" },
+                {},
+                { null, "", "説明" }
+        };
+
+        long before = System.currentTimeMillis();
+        GuideSnapshot.write(names, iconUrls, schedules, descriptions, file);
+        GuideSnapshot snapshot = GuideSnapshot.open(file);
+        assertTrue(snapshot.getCreatedTime() >= before);
+
+        Channel[] channels = snapshot.getChannels();
+        assertEquals(names.length, channels.length);
+        for (int i = 0; i < channels.length; i++) {
+            Channel channel = channels[i];
+            assertEquals(names[i], channel.getName());
+            assertEquals(iconUrls[i], channel.getIconUrl());
+
+            ProgramIndex expected = schedules[i];
+            assertEquals(expected.size(), channel.getProgramCount());
+            for (int j = 0; j < expected.size(); j++) {
+                Program program = channel.getProgram(j);
+                assertEquals(expected.getStartTime(j), program.getStartTime());
+                assertEquals(expected.getEndTime(j), program.getEndTime());
+                assertEquals(expected.getName(j), program.getName());
+                assertEquals(descriptions[i][j], program.getDescription());
+                assertEquals(descriptions[i][j], channel.getProgramDescription(j));
+            }
+        }
+    }
+
+    @Test
+    public void decodesProgramsLazily() throws IOException {
+        GuideSnapshot.write(new String[] { "Channel" }, new String[] { null },
+                new ProgramIndex[] {
+                        schedule(new long[] { START }, new long[] { START + MINUTE },
+                                new String[] { "Program" })
+                }, new String[][] { { null } }, file);
+
+        MappedChannel channel = (MappedChannel) GuideSnapshot.open(file).getChannels()[0];
+        assertEquals(1, channel.getProgramCount());
+        assertFalse(channel.isLoaded());
+
+        assertEquals("Program", channel.getProgramName(0));
+        assertTrue(channel.isLoaded());
+    }
+
+    @Test
+    public void indexesProgramsWithoutDecodingChannels() throws IOException, InterruptedException {
+        GuideSnapshot.write(new String[] { "First", "Second" }, new String[] { null, null },
+                new ProgramIndex[] {
+                        schedule(new long[] { START, START + MINUTE },
+                                new long[] { START + MINUTE, START + 2 * MINUTE },
+                                new String[] { "Morning News", "Weather" }),
+                        schedule(new long[] { START }, new long[] { START + MINUTE },
+                                new String[] { "Evening News" })
+                }, new String[][] { { null, "Rain later" }, { null } }, file);
+
+        GuideSnapshot snapshot = GuideSnapshot.open(file);
+        ProgramSearchIndex searchIndex = new ProgramSearchIndex();
+        try {
+            snapshot.addToSearchIndex(searchIndex);
+            long deadline = System.currentTimeMillis() + 10 * 1000;
+            while (searchIndex.size() < 3) {
+                assertTrue("timed out", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+
+            List<ProgramSearchIndex.Result> results = searchIndex.search("news", 10);
+            assertEquals(2, results.size());
+            assertEquals(0, results.get(0).getChannel());
+            assertEquals("Morning News", results.get(0).getName());
+            assertEquals(1, results.get(1).getChannel());
+            assertEquals(START, results.get(1).getStartTime());
+
+            results = searchIndex.search("rain", 10);
+            assertEquals(1, results.size());
+            assertEquals(START + MINUTE, results.get(0).getStartTime());
+        } finally {
+            searchIndex.shutdown();
+        }
+
+        for (Channel channel : snapshot.getChannels()) {
+            assertFalse(((MappedChannel) channel).isLoaded());
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        GuideSnapshot.write(new String[] { "Channel" }, new String[] { null },
+                new ProgramIndex[] { schedule(new long[0], new long[0], new String[0]) },
+                new String[][] { {} }, file);
+
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.seek(4);
+            output.writeInt(GuideSnapshot.VERSION + 1);
+        } finally {
+            output.close();
+        }
+        assertRejected();
+
+        output = new RandomAccessFile(file, "rw");
+        try {
+            output.seek(0);
+            output.writeInt(0x89504e47);
+            output.writeInt(GuideSnapshot.VERSION);
+        } finally {
+            output.close();
+        }
+        assertRejected();
+
+        // shorter than the header
+        output = new RandomAccessFile(file, "rw");
+        try {
+            output.setLength(8);
+        } finally {
+            output.close();
+        }
+        assertRejected();
+    }
+
+    @Test
+    public void rejectsCorruptHeaders() throws IOException {
+        writeSingleProgram();
+
+        // counts that would allocate huge arrays or read past the end
+        writeInt(16, Integer.MAX_VALUE);
+        assertRejected();
+        writeInt(16, 1);
+        writeInt(20, -1);
+        assertRejected();
+
+        // positions not matching the counts
+        writeSingleProgram();
+        writeInt(24, 0);
+        assertRejected();
+
+        // too short for the programs of the channel with a valid header
+        writeSingleProgram();
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.seek(32 + 12);
+            output.setLength(output.readInt() + 2);
+        } finally {
+            output.close();
+        }
+        assertRejected();
+    }
+
+    @Test
+    public void dropsProgramsFailingToDecode() throws IOException {
+        writeSingleProgram();
+
+        // continuation bits on every byte of the programs make values run past the end
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.seek(32 + 12);
+            int position = output.readInt();
+            output.seek(position);
+            while (output.getFilePointer() < output.length()) output.write(0xff);
+        } finally {
+            output.close();
+        }
+
+        GuideSnapshot snapshot = GuideSnapshot.open(file);
+        final int[] corruptions = { 0 };
+        snapshot.setListener(new GuideSnapshot.Listener() {
+            @Override
+            public void onSnapshotCorrupted(GuideSnapshot snapshot, IOException e) {
+                corruptions[0]++;
+            }
+        });
+
+        Channel channel = snapshot.getChannels()[0];
+        assertEquals("Channel", channel.getName());
+        assertEquals(0, channel.getProgramIndex().size());
+        assertEquals(0, channel.getProgramCount());
+        assertTrue(snapshot.isCorrupted());
+        assertEquals(1, corruptions[0]);
+    }
+
+    private void writeSingleProgram() throws IOException {
+        GuideSnapshot.write(new String[] { "Channel" }, new String[] { null },
+                new ProgramIndex[] {
+                        schedule(new long[] { START }, new long[] { START + MINUTE },
+                                new String[] { "Program" })
+                }, new String[][] { { null } }, file);
+    }
+
+    private void writeInt(long position, int value) throws IOException {
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.seek(position);
+            output.writeInt(value);
+        } finally {
+            output.close();
+        }
+    }
+
+    private void assertRejected() {
+        try {
+            GuideSnapshot.open(file);
+            fail("opened " + file);
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static ProgramIndex schedule(long[] startTimes, long[] endTimes, String[] names) {
+        return new ProgramIndex(startTimes, endTimes, names, startTimes.length);
+    }
+}
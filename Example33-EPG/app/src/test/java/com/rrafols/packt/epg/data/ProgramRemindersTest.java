@@ -0,0 +1,354 @@
+package com.rrafols.packt.epg.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Timing wheel driven by a fake clock. Checks events are fired in time order, never early and
+ * at most one tick late, while cascading through the levels, waiting in the overflow list and
+ * when the clock jumps in both directions.
+ */
+public class ProgramRemindersTest {
+    private static final long RESOLUTION = 1000;
+    private static final long WHEEL_TICKS = 64L * 64 * 64 * 64;
+
+    // aligned to all the levels, so slot boundaries are easy to predict
+    private static final long START = WHEEL_TICKS * RESOLUTION * 100;
+    private static final long SECOND = 1000;
+    private static final long DAY = 24 * 60 * 60 * SECOND;
+
+    private static class FakeClock implements ProgramReminders.Clock {
+        private long time;
+
+        @Override
+        public long currentTimeMillis() {
+            return time;
+        }
+    }
+
+    private static class Event {
+        private final int type;
+        private final int channel;
+        private final long startTime;
+        private final long eventTime;
+        private final long firedAt;
+
+        Event(int type, int channel, long startTime, long eventTime, long firedAt) {
+            this.type = type;
+            this.channel = channel;
+            this.startTime = startTime;
+            this.eventTime = eventTime;
+            this.firedAt = firedAt;
+        }
+    }
+
+    private FakeClock clock;
+    private ArrayList<Event> fired;
+    private ProgramReminders.Listener recorder;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        clock.time = START;
+        fired = new ArrayList<>();
+        recorder = new ProgramReminders.Listener() {
+            @Override
+            public void onProgramEvent(int type, int channel, long startTime, long eventTime) {
+                fired.add(new Event(type, channel, startTime, eventTime, clock.time));
+            }
+        };
+    }
+
+    @Test
+    public void firesInTimeOrderAcrossLevels() {
+        ProgramReminders reminders = new ProgramReminders(clock, RESOLUTION, 100000, recorder);
+
+        // up to 64^3 ticks away, so events cascade down from every level of the wheel
+        Random random = new Random(24);
+        int count = 20000;
+        for (int i = 0; i < count; i++) {
+            long eventTime = START + 1 + (long) (random.nextDouble() * 64 * 64 * 64 * RESOLUTION);
+            reminders.schedule(ProgramReminders.EVENT_START, i, eventTime, eventTime);
+        }
+        assertEquals(count, reminders.size());
+
+        runUntilEmpty(reminders, 64 * 64 * 64 + 1);
+        assertFiredInOrder(count);
+    }
+
+    @Test
+    public void firesEventsInOverflow() {
+        ProgramReminders reminders = new ProgramReminders(clock, RESOLUTION, 16, recorder);
+
+        long eventTime = START + 3 * WHEEL_TICKS * RESOLUTION + 1234;
+        reminders.schedule(ProgramReminders.EVENT_END, 7, eventTime - DAY, eventTime);
+        assertEquals(START + WHEEL_TICKS * RESOLUTION, reminders.getNextWakeupTime());
+
+        // one wake up per wheel turn and per level cascade, not one per tick
+        int wakeups = runUntilEmpty(reminders, 64);
+        assertTrue(wakeups + " wake ups", wakeups < 16);
+
+        assertEquals(1, fired.size());
+        Event event = fired.get(0);
+        assertEquals(ProgramReminders.EVENT_END, event.type);
+        assertEquals(7, event.channel);
+        assertEquals(eventTime - DAY, event.startTime);
+        assertEquals(eventTime, event.eventTime);
+        assertFiredInOrder(1);
+    }
+
+    @Test
+    public void firesEventsInOverflowAfterJump() {
+        ProgramReminders reminders = new ProgramReminders(clock, RESOLUTION, 16, recorder);
+
+        long eventTime = START + 2 * WHEEL_TICKS * RESOLUTION;
+        reminders.schedule(ProgramReminders.EVENT_START, 0, eventTime, eventTime);
+
+        clock.time = eventTime - 1;
+        reminders.advance();
+        assertEquals(0, fired.size());
+
+        clock.time = eventTime;
+        reminders.advance();
+        assertEquals(1, fired.size());
+        assertEquals(0, reminders.size());
+    }
+
+    @Test
+    public void cancelBeforeFiring() {
+        ProgramReminders reminders = new ProgramReminders(clock, RESOLUTION, 16, recorder);
+
+        int kept = reminders.schedule(ProgramReminders.EVENT_START, 1, START, START + 10 * SECOND);
+        int cancelled = reminders.schedule(ProgramReminders.EVENT_START, 2, START, START + 20 * SECOND);
+        int overflow = reminders.schedule(ProgramReminders.EVENT_START, 3, START, START + 400 * DAY);
+
+        assertTrue(reminders.cancel(cancelled));
+        assertTrue(reminders.cancel(overflow));
+        assertFalse(reminders.cancel(cancelled));
+        assertEquals(1, reminders.size());
+
+        runUntilEmpty(reminders, 64);
+        assertEquals(1, fired.size());
+        assertEquals(1, fired.get(0).channel);
+        assertFalse(reminders.cancel(kept));
+    }
+
+    @Test
+    public void cancelFromListener() {
+        final int[] other = new int[1];
+        final ProgramReminders[] holder = new ProgramReminders[1];
+        ProgramReminders reminders = new ProgramReminders(clock, RESOLUTION, 16,
+                new ProgramReminders.Listener() {
+                    @Override
+                    public void onProgramEvent(int type, int channel, long startTime, long eventTime) {
+                        recorder.onProgramEvent(type, channel, startTime, eventTime);
+                        assertTrue(holder[0].cancel(other[0]));
+                    }
+                });
+        holder[0] = reminders;
+
+        // both due on the same tick, the first one fired cancels the second
+        reminders.schedule(ProgramReminders.EVENT_START, 1, START, START + 10 * SECOND);
+        other[0] = reminders.schedule(ProgramReminders.EVENT_START, 2, START, START + 10 * SECOND + 1);
+
+        clock.time = START + 11 * SECOND;
+        reminders.advance();
+        assertEquals(1, fired.size());
+        assertEquals(1, fired.get(0).channel);
+        assertEquals(0, reminders.size());
+    }
+
+    @Test
+    public void staleHandlesDoNotCancelReusedEntries() {
+        ProgramReminders reminders = new ProgramReminders(clock, RESOLUTION, 1, recorder);
+
+        int first = reminders.schedule(ProgramReminders.EVENT_START, 1, START, START + SECOND);
+        clock.time = START + SECOND;
+        reminders.advance();
+        assertEquals(1, fired.size());
+
+        // only one entry, the second event reuses it
+        int second = reminders.schedule(ProgramReminders.EVENT_START, 2, START, START + 2 * SECOND);
+        assertTrue(first != second);
+        assertFalse(reminders.cancel(first));
+        assertEquals(1, reminders.size());
+
+        reminders.clear();
+        assertFalse(reminders.cancel(second));
+
+        int third = reminders.schedule(ProgramReminders.EVENT_START, 3, START, START + 3 * SECOND);
+        assertFalse(reminders.cancel(second));
+        assertTrue(reminders.cancel(third));
+    }
+
+    @Test
+    public void waitsWhenClockGoesBackwards() {
+        ProgramReminders reminders = new ProgramReminders(clock, RESOLUTION, 16, recorder);
+        reminders.schedule(ProgramReminders.EVENT_START, 1, START, START + 10 * SECOND);
+
+        // further back than the catch up limit
+        clock.time = START - DAY;
+        reminders.advance();
+        assertEquals(0, fired.size());
+
+        // scheduled behind the wheel, but not due until the clock reaches it
+        long lateTime = START - DAY + 30 * SECOND;
+        reminders.schedule(ProgramReminders.EVENT_START, 2, lateTime, lateTime);
+        assertEquals(lateTime, reminders.getNextWakeupTime());
+
+        clock.time = lateTime - 1;
+        reminders.advance();
+        assertEquals(0, fired.size());
+
+        clock.time = lateTime;
+        reminders.advance();
+        assertEquals(1, fired.size());
+        assertEquals(2, fired.get(0).channel);
+
+        clock.time = START + 5 * SECOND;
+        reminders.advance();
+        assertEquals(1, fired.size());
+
+        clock.time = START + 10 * SECOND;
+        reminders.advance();
+        assertEquals(2, fired.size());
+        assertEquals(1, fired.get(1).channel);
+        assertFiredInOrder(2);
+    }
+
+    @Test
+    public void catchesUpWhenClockJumpsForward() {
+        // a jump within the catch up limit and one rebuilding the wheel
+        long[] jumps = { 3000 * SECOND, DAY };
+        for (long jump : jumps) {
+            setUp();
+            ProgramReminders reminders = new ProgramReminders(clock, RESOLUTION, 100000, recorder);
+
+            Random random = new Random(jump);
+            int count = 5000;
+            for (int i = 0; i < count; i++) {
+                long eventTime = START + 1 + (long) (random.nextDouble() * 2 * jump);
+                reminders.schedule(ProgramReminders.EVENT_START, i, eventTime, eventTime);
+            }
+
+            clock.time = START + jump;
+            reminders.advance();
+            assertTrue(fired.size() > 0);
+            for (int i = 0; i < fired.size(); i++) {
+                assertTrue(fired.get(i).eventTime <= clock.time);
+            }
+            assertEquals(count, fired.size() + reminders.size());
+            long next = reminders.getNextWakeupTime();
+            assertTrue(next > clock.time);
+
+            runUntilEmpty(reminders, 64 * 64 * 64);
+            assertEquals(count, fired.size());
+            for (int i = 1; i < fired.size(); i++) {
+                assertTrue(fired.get(i - 1).eventTime <= fired.get(i).eventTime);
+            }
+        }
+    }
+
+    @Test
+    public void limitsPendingEvents() {
+        ProgramReminders reminders = new ProgramReminders(clock, RESOLUTION, 4, recorder);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(reminders.schedule(ProgramReminders.EVENT_START, i, START, START + (i + 1) * SECOND) >= 0);
+        }
+        assertEquals(-1, reminders.schedule(ProgramReminders.EVENT_START, 4, START, START + SECOND));
+        assertEquals(4, reminders.size());
+
+        clock.time = START + SECOND;
+        reminders.advance();
+        assertEquals(3, reminders.size());
+        assertTrue(reminders.schedule(ProgramReminders.EVENT_START, 4, START, START + 10 * SECOND) >= 0);
+
+        // scheduleChannel stops once the limit is reached
+        reminders.clear();
+        long[] startTimes = new long[10];
+        long[] endTimes = new long[10];
+        String[] names = new String[10];
+        for (int i = 0; i < 10; i++) {
+            startTimes[i] = START + (i + 1) * 60 * SECOND;
+            endTimes[i] = startTimes[i] + 60 * SECOND;
+        }
+        ProgramIndex index = new ProgramIndex(startTimes, endTimes, names, 10);
+        int scheduled = reminders.scheduleChannel(0, index, START, START + DAY,
+                ProgramReminders.STARTS | ProgramReminders.ENDS, 30 * SECOND);
+        assertEquals(4, scheduled);
+        assertEquals(4, reminders.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyEvents() {
+        new ProgramReminders(clock, RESOLUTION, (1 << 24) + 1, recorder);
+    }
+
+    @Test
+    public void nextWakeupTime() {
+        ProgramReminders reminders = new ProgramReminders(clock, RESOLUTION, 16, recorder);
+        assertEquals(Long.MAX_VALUE, reminders.getNextWakeupTime());
+
+        // level 0: rounded up to the tick the event is fired at
+        int handle = reminders.schedule(ProgramReminders.EVENT_START, 0, START, START + 10 * SECOND + 500);
+        assertEquals(START + 11 * SECOND, reminders.getNextWakeupTime());
+        reminders.cancel(handle);
+
+        // level 1: wake up first to cascade the slot down at tick 64
+        reminders.schedule(ProgramReminders.EVENT_START, 0, START, START + 100 * SECOND);
+        assertEquals(START + 64 * SECOND, reminders.getNextWakeupTime());
+
+        clock.time = START + 64 * SECOND;
+        reminders.advance();
+        assertEquals(0, fired.size());
+        assertEquals(START + 100 * SECOND, reminders.getNextWakeupTime());
+
+        clock.time = START + 100 * SECOND;
+        reminders.advance();
+        assertEquals(1, fired.size());
+        assertEquals(Long.MAX_VALUE, reminders.getNextWakeupTime());
+    }
+
+    /**
+     * Advance the clock to every wake up time until there are no events left, checking no
+     * event is fired early or more than one tick late.
+     *
+     * @return number of wake ups
+     */
+    private int runUntilEmpty(ProgramReminders reminders, long maxWakeups) {
+        int wakeups = 0;
+        while (reminders.size() > 0) {
+            long wakeupTime = reminders.getNextWakeupTime();
+            assertTrue("wake up time going back", wakeupTime > clock.time);
+            assertTrue("too many wake ups", wakeups++ < maxWakeups);
+
+            int firedBefore = fired.size();
+            clock.time = wakeupTime;
+            reminders.advance();
+            for (int i = firedBefore; i < fired.size(); i++) {
+                Event event = fired.get(i);
+                assertTrue("fired early", event.eventTime <= event.firedAt);
+                assertTrue("fired late", event.firedAt - event.eventTime < RESOLUTION);
+            }
+        }
+
+        return wakeups;
+    }
+
+    private void assertFiredInOrder(int count) {
+        assertEquals(count, fired.size());
+        for (int i = 0; i < fired.size(); i++) {
+            Event event = fired.get(i);
+            assertTrue(event.eventTime <= event.firedAt);
+            if (i > 0) assertTrue(fired.get(i - 1).eventTime <= event.eventTime);
+        }
+    }
+}
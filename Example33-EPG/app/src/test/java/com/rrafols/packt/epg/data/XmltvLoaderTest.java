@@ -0,0 +1,205 @@
+package com.rrafols.packt.epg.data;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parses the XMLTV fixture shipped in the assets. The loader posts its results to the main
+ * looper, which is paused so they are only delivered, on the test thread, when waiting.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class XmltvLoaderTest {
+    private static final String FIXTURE = "guide.xml";
+    private static final long FIXTURE_START = 1508284800000L;
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long TIMEOUT = 10 * 1000;
+
+    // programs per channel in the fixture, all channels start at FIXTURE_START
+    private static final int[] PROGRAM_COUNTS = { 26, 18, 20, 20, 25, 20, 24, 25 };
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+    private Channel[] channels;
+    private int windows;
+    private boolean finished;
+    private Exception failure;
+
+    @Before
+    public void setUp() {
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @Test
+    public void parsesTimeZoneOffsets() {
+        assertEquals(FIXTURE_START, XmltvLoader.parseTime("20171018000000 +0000"));
+        assertEquals(FIXTURE_START, XmltvLoader.parseTime("20171018023000 +0230"));
+        assertEquals(FIXTURE_START, XmltvLoader.parseTime("20171017190000 -0500"));
+
+        // seconds and time zone are optional
+        assertEquals(FIXTURE_START, XmltvLoader.parseTime("201710180000 +0000"));
+        assertEquals(FIXTURE_START, XmltvLoader.parseTime("20171018000000"));
+        assertEquals(FIXTURE_START + 59 * 1000, XmltvLoader.parseTime("20171018000059 +0000"));
+
+        // leap days and dates before the epoch
+        assertEquals(1456747200000L, XmltvLoader.parseTime("20160229120000 +0000"));
+        assertEquals(-1000, XmltvLoader.parseTime("19691231235959 +0000"));
+        assertEquals(FIXTURE_START, XmltvLoader.parseTime("20171018000000 -0000"));
+
+        assertEquals(Long.MIN_VALUE, XmltvLoader.parseTime(null));
+        assertEquals(Long.MIN_VALUE, XmltvLoader.parseTime("2017101800"));
+        assertEquals(Long.MIN_VALUE, XmltvLoader.parseTime("2017101800xx00 +0000"));
+    }
+
+    @Test
+    public void loadsRequestedWindows() throws IOException {
+        XmltvLoader loader = createLoader(0);
+        loader.start();
+
+        // nothing requested, it pauses once the first channel is complete
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return channels != null && channels[0].getProgramCount() == PROGRAM_COUNTS[0];
+            }
+        });
+        assertEquals(PROGRAM_COUNTS.length, channels.length);
+        assertLoaded(1);
+
+        loader.requestWindow(2, FIXTURE_START + HOUR);
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return channels[2].getProgramCount() == PROGRAM_COUNTS[2];
+            }
+        });
+        assertLoaded(3);
+
+        loader.requestWindow(PROGRAM_COUNTS.length - 1, Long.MAX_VALUE);
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return finished;
+            }
+        });
+        assertLoaded(PROGRAM_COUNTS.length);
+        assertTrue(windows >= PROGRAM_COUNTS.length);
+        assertNull(failure);
+
+        for (int i = 0; i < channels.length; i++) {
+            assertEquals("Channel " + i, channels[i].getName());
+            assertNotNull(channels[i].getIconUrl());
+
+            // consecutive programs without gaps in the fixture
+            ProgramIndex index = channels[i].getProgramIndex();
+            assertEquals(FIXTURE_START, index.getStartTime(0));
+            for (int j = 1; j < index.size(); j++) {
+                assertEquals(index.getEndTime(j - 1), index.getStartTime(j));
+            }
+        }
+
+        Program first = channels[0].getProgram(0);
+        assertEquals("Cooking Today", first.getName());
+        assertEquals("Cooking Today on channel 0.", first.getDescription());
+        assertEquals(FIXTURE_START + 90 * 60 * 1000, first.getEndTime());
+    }
+
+    @Test
+    public void shiftsTimes() throws IOException {
+        long timeShift = 24 * HOUR;
+        XmltvLoader loader = createLoader(timeShift);
+        loader.requestWindow(PROGRAM_COUNTS.length - 1, Long.MAX_VALUE);
+        loader.start();
+
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return finished;
+            }
+        });
+        assertLoaded(PROGRAM_COUNTS.length);
+        for (Channel channel : channels) {
+            assertEquals(FIXTURE_START + timeShift, channel.getProgramIndex().getStartTime(0));
+        }
+    }
+
+    private XmltvLoader createLoader(long timeShift) throws IOException {
+        XmltvLoader loader = new XmltvLoader(RuntimeEnvironment.application.getAssets().open(FIXTURE),
+                new XmltvLoader.Listener() {
+                    @Override
+                    public void onChannelsLoaded(Channel[] channels) {
+                        XmltvLoaderTest.this.channels = channels;
+                    }
+
+                    @Override
+                    public void onWindowLoaded(int firstChannel, int lastChannel, long startTime, long endTime) {
+                        assertTrue(firstChannel <= lastChannel);
+                        assertTrue(startTime < endTime);
+                        windows++;
+                    }
+
+                    @Override
+                    public void onLoadFinished() {
+                        finished = true;
+                    }
+
+                    @Override
+                    public void onLoadFailed(Exception e) {
+                        failure = e;
+                    }
+                });
+        loader.setTimeShift(timeShift);
+        return loader;
+    }
+
+    /**
+     * Check the first channels are complete and the rest have no programs, after giving the
+     * loader some time to go further than it should.
+     */
+    private void assertLoaded(int completeChannels) {
+        sleep(100);
+        ShadowLooper.runUiThreadTasks();
+
+        for (int i = 0; i < PROGRAM_COUNTS.length; i++) {
+            int expected = i < completeChannels ? PROGRAM_COUNTS[i] : 0;
+            assertEquals("channel " + i, expected, channels[i].getProgramCount());
+        }
+    }
+
+    /**
+     * Deliver the results posted by the loader until the condition is met.
+     */
+    private void waitFor(Condition condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (true) {
+            ShadowLooper.runUiThreadTasks();
+            if (failure != null) throw new AssertionError(failure);
+            if (condition.isMet()) return;
+
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            sleep(10);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
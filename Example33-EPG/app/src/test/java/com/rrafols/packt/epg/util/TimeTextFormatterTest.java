@@ -0,0 +1,46 @@
+package com.rrafols.packt.epg.util;
+
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Texts are formatted in the zone of the formatter and cached ones are discarded when the
+ * zone changes.
+ */
+public class TimeTextFormatterTest {
+    // 2017-10-18 00:00:00 UTC
+    private static final long START = 1508284800000L;
+    private static final long MINUTE = 60 * 1000;
+
+    @Test
+    public void formatsTimes() {
+        TimeTextFormatter formatter = new TimeTextFormatter(TimeZone.getTimeZone("UTC"));
+        assertEquals("00:00", formatter.getShortTimeText(START));
+        assertEquals("13:05:09", formatter.getTimeText(START + 13 * 60 * MINUTE + 5 * MINUTE + 9000));
+        assertEquals("00:00:00 - 01:30:00", formatter.getTimeRangeText(START, START + 90 * MINUTE));
+
+        // before the epoch and longer ranges than the cached ones
+        assertEquals("23:59", formatter.getShortTimeText(-MINUTE));
+        assertEquals("00:00:00 - 00:00:00",
+                formatter.getTimeRangeText(START, START + 365L * 24 * 60 * MINUTE));
+    }
+
+    @Test
+    public void discardsCachedTextsWhenZoneChanges() {
+        TimeTextFormatter formatter = new TimeTextFormatter(TimeZone.getTimeZone("UTC"));
+        assertEquals("00:00", formatter.getShortTimeText(START));
+        assertEquals("00:00:00", formatter.getTimeText(START));
+        assertEquals("00:00:00 - 00:30:00", formatter.getTimeRangeText(START, START + 30 * MINUTE));
+
+        formatter.setTimeZone(TimeZone.getTimeZone("GMT+02:30"));
+        assertEquals("02:30", formatter.getShortTimeText(START));
+        assertEquals("02:30:00", formatter.getTimeText(START));
+        assertEquals("02:30:00 - 03:00:00", formatter.getTimeRangeText(START, START + 30 * MINUTE));
+
+        formatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+        assertEquals("00:00", formatter.getShortTimeText(START));
+    }
+}